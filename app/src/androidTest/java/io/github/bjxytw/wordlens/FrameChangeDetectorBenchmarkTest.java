@@ -0,0 +1,32 @@
+package io.github.bjxytw.wordlens;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+@RunWith(AndroidJUnit4.class)
+public class FrameChangeDetectorBenchmarkTest {
+    private static final String TAG = "FrameChangeBenchmark";
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int ROUNDS = 2000;
+
+    @Test
+    public void measuresSignature() {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        new Random(6).nextBytes(frame);
+        FrameChangeDetector detector = new FrameChangeDetector(6);
+        for (int i = 0; i < ROUNDS; i++) detector.hasChanged(frame, WIDTH, HEIGHT, 192, 270, 1088, 450);
+
+        long startTime = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ROUNDS; i++) detector.hasChanged(frame, WIDTH, HEIGHT, 192, 270, 1088, 450);
+        long checkTime = SystemClock.elapsedRealtimeNanos() - startTime;
+        Log.i(TAG, "Signature: " + checkTime / ROUNDS + " ns per frame.");
+    }
+}
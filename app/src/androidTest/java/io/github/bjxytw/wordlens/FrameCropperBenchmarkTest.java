@@ -0,0 +1,72 @@
+package io.github.bjxytw.wordlens;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class FrameCropperBenchmarkTest {
+    private static final String TAG = "FrameCropperBenchmark";
+    // The preview size CameraSource requests.
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    // CameraCursorGraphic's recognition area (60% x 25% of the portrait view, centered),
+    // rotated into the landscape camera frame.
+    private static final int LEFT = 240;
+    private static final int TOP = 96;
+    private static final int RIGHT = 400;
+    private static final int BOTTOM = 384;
+    private static final int ROUNDS = 2000;
+
+    @Test
+    public void cropIsFasterThanFillingMargins() {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        FrameCropper cropper = new FrameCropper();
+        for (int i = 0; i < ROUNDS; i++) {
+            cropper.recycle(cropper.crop(frame, WIDTH, HEIGHT, LEFT, TOP, RIGHT, BOTTOM));
+            fillMargin(frame, WIDTH, HEIGHT, LEFT, TOP, RIGHT, BOTTOM);
+        }
+
+        long startTime = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ROUNDS; i++)
+            cropper.recycle(cropper.crop(frame, WIDTH, HEIGHT, LEFT, TOP, RIGHT, BOTTOM));
+        long cropTime = SystemClock.elapsedRealtimeNanos() - startTime;
+        startTime = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ROUNDS; i++) fillMargin(frame, WIDTH, HEIGHT, LEFT, TOP, RIGHT, BOTTOM);
+        long fillTime = SystemClock.elapsedRealtimeNanos() - startTime;
+        Log.i(TAG, "Crop: " + cropTime / ROUNDS + " ns, fill: " + fillTime / ROUNDS + " ns per frame.");
+        assertTrue(cropTime < fillTime);
+    }
+
+    // The margin zeroing the crop replaced.
+    private static void fillMargin(byte[] array, int width, int height,
+                                   int left, int top, int right, int bottom) {
+        int size = width * height;
+        byte initValue = (byte) 0;
+        Arrays.fill(array, 0, top * width, initValue);
+        Arrays.fill(array, width * bottom, size + half(top * width), initValue);
+        Arrays.fill(array, size + half(width * bottom), array.length, initValue);
+        for (int i = top; i < bottom; i++) {
+            int offset = i * width;
+            Arrays.fill(array, offset, offset + left, initValue);
+            Arrays.fill(array, offset + right, offset + width, initValue);
+        }
+        for (int i = half(top); i < half(bottom); i++) {
+            int offset = i * width + size;
+            Arrays.fill(array, offset, offset + left - 1, initValue);
+            Arrays.fill(array, offset + right, offset + width, initValue);
+        }
+    }
+
+    private static int half(int size) {
+        return Math.round(size * 0.5f);
+    }
+}
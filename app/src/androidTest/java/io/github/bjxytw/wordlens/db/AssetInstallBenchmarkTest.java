@@ -0,0 +1,100 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class AssetInstallBenchmarkTest {
+    private static final String TAG = "AssetInstallBenchmark";
+    private static final String RAW_ASSET = "ejdict.sqlite3";
+    private static final String COMPRESSED_ASSET = "ejdict.sqlite3.gz";
+    private Context context;
+    private File rawSource;
+    private File compressedSource;
+    private File rawTarget;
+    private File compressedTarget;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getTargetContext();
+        File dir = context.getCacheDir();
+        rawSource = new File(dir, "install_source.sqlite3");
+        compressedSource = new File(dir, "install_source.sqlite3.gz");
+        rawTarget = new File(dir, "install_raw.db");
+        compressedTarget = new File(dir, "install_compressed.db");
+
+        // The app ships one of the two forms; the other is derived from it once, untimed.
+        String[] assets = context.getAssets().list("");
+        if (assets != null && Arrays.asList(assets).contains(COMPRESSED_ASSET)) {
+            copy(context.getAssets().open(COMPRESSED_ASSET), new FileOutputStream(compressedSource));
+            copy(new GZIPInputStream(new FileInputStream(compressedSource)),
+                    new FileOutputStream(rawSource));
+        } else {
+            copy(context.getAssets().open(RAW_ASSET), new FileOutputStream(rawSource));
+            copy(new FileInputStream(rawSource),
+                    new GZIPOutputStream(new FileOutputStream(compressedSource)));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : new File[]{rawSource, compressedSource, rawTarget, compressedTarget})
+            if (file.exists()) assertTrue(file.delete());
+    }
+
+    @Test
+    public void comparesCompressedWithRawInstall() throws IOException {
+        DatabaseHelper helper = new DatabaseHelper(context);
+
+        long startTime = SystemClock.elapsedRealtime();
+        long rawSize;
+        try (FileInputStream input = new FileInputStream(rawSource)) {
+            rawSize = helper.transfer(input, 0, rawSource.length(), rawTarget);
+        }
+        DatabaseHelper.verifyCopy(rawTarget, rawSize);
+        long rawTime = SystemClock.elapsedRealtime() - startTime;
+        long rawBytesRead = helper.getSourceBytesRead();
+
+        startTime = SystemClock.elapsedRealtime();
+        long compressedSize = helper.copyCompressed(new FileInputStream(compressedSource),
+                compressedSource.length(), compressedTarget);
+        DatabaseHelper.verifyCopy(compressedTarget, compressedSize);
+        long compressedTime = SystemClock.elapsedRealtime() - startTime;
+        long compressedBytesRead = helper.getSourceBytesRead();
+
+        Log.i(TAG, "Raw: " + rawBytesRead + " bytes read in " + rawTime + " ms. Gzip: "
+                + compressedBytesRead + " bytes read in " + compressedTime + " ms. Database "
+                + rawSize + " bytes.");
+        assertEquals(rawSize, compressedSize);
+        assertTrue(compressedBytesRead < rawBytesRead);
+    }
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+        try (InputStream in = input; OutputStream out = output) {
+            byte[] buffer = new byte[64 * 1024];
+            int size;
+            while ((size = in.read(buffer)) > 0) out.write(buffer, 0, size);
+        }
+    }
+}
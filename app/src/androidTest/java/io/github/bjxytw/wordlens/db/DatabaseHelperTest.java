@@ -0,0 +1,102 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class DatabaseHelperTest {
+    private SQLiteDatabase database;
+
+    @Before
+    public void setUp() {
+        database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE items(item_id INTEGER PRIMARY KEY, word TEXT, mean TEXT, level INTEGER)");
+        database.execSQL("INSERT INTO items(word, mean, level) VALUES('Apple', 'りんご', 1)");
+        database.execSQL("INSERT INTO items(word, mean, level) VALUES('apple', '《米俗》大都市', 0)");
+        database.execSQL("INSERT INTO items(word, mean, level) VALUES('take', '…を取る', 1)");
+        DatabaseHelper.createSearchIndex(database);
+        DatabaseHelper.createInflectionIndex(database,
+                Collections.singletonMap("took", "take"));
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void searchUsesIndex() {
+        assertSearchUsesIndex(database);
+    }
+
+    @Test
+    public void installedDictionaryUsesIndex() {
+        DatabaseHelper helper = new DatabaseHelper(InstrumentationRegistry.getTargetContext());
+        SQLiteDatabase installed = helper.getReadableDatabase();
+        assertNotNull(installed);
+        assertSearchUsesIndex(installed);
+        helper.close();
+    }
+
+    @Test
+    public void searchIgnoresCase() {
+        try (Cursor cursor = database.rawQuery(SqlHeadwordIndex.SQL_FIND_ROWS, new String[]{"apple"})) {
+            assertEquals(2, cursor.getCount());
+        }
+    }
+
+    @Test
+    public void inflectionSearchUsesIndex() {
+        try (Cursor cursor = database.rawQuery(
+                "EXPLAIN QUERY PLAN " + DictionarySearch.SQL_SEARCH_INFLECTION, new String[]{"apples"})) {
+            int detailIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                String detail = cursor.getString(detailIndex);
+                assertFalse(detail, detail.startsWith("SCAN"));
+            }
+        }
+    }
+
+    @Test
+    public void inflectionSearchFindsBaseForm() {
+        try (Cursor cursor = database.rawQuery(
+                DictionarySearch.SQL_SEARCH_INFLECTION, new String[]{"apples"})) {
+            assertEquals(2, cursor.getCount());
+        }
+        try (Cursor cursor = database.rawQuery(
+                DictionarySearch.SQL_SEARCH_INFLECTION, new String[]{"took"})) {
+            assertEquals(1, cursor.getCount());
+        }
+    }
+
+    @Test
+    public void createSearchIndexIsRepeatable() {
+        DatabaseHelper.createSearchIndex(database);
+        assertSearchUsesIndex(database);
+    }
+
+    private static void assertSearchUsesIndex(SQLiteDatabase db) {
+        try (Cursor cursor = db.rawQuery(
+                "EXPLAIN QUERY PLAN " + SqlHeadwordIndex.SQL_FIND_ROWS, new String[]{"apple"})) {
+            int detailIndex = cursor.getColumnIndex("detail");
+            assertTrue(cursor.moveToFirst());
+            do {
+                String detail = cursor.getString(detailIndex);
+                assertFalse(detail, detail.startsWith("SCAN"));
+                assertTrue(detail, detail.contains(DatabaseHelper.INDEX_WORD_KEY));
+            } while (cursor.moveToNext());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class DefinitionStoreBenchmarkTest {
+    private static final String TAG = "DefinitionStoreBenchmark";
+    private static final String SQL_MEAN = "SELECT mean FROM items WHERE rowid=?";
+    private static final int LOOKUPS = 2000;
+
+    @Test
+    public void comparesDecodeWithSqlRead() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        DatabaseHelper helper = new DatabaseHelper(context);
+        SQLiteDatabase database = helper.getReadableDatabase();
+        assertNotNull(database);
+        DefinitionStore.buildIfStale(helper.getDefinitionsPath(), database);
+        DefinitionStore store = DefinitionStore.load(helper.getDefinitionsPath(),
+                DictionaryUpdater.readDataVersion(database));
+        assertNotNull(store);
+
+        List<Long> rows = new ArrayList<>();
+        try (Cursor cursor = database.rawQuery(
+                "SELECT rowid FROM items WHERE word IS NOT NULL AND mean IS NOT NULL", null)) {
+            while (cursor.moveToNext()) rows.add(cursor.getLong(0));
+        }
+        Random random = new Random(5);
+        long[] lookups = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) lookups[i] = rows.get(random.nextInt(rows.size()));
+
+        long storeTime = 0;
+        long sqlTime = 0;
+        for (int round = 0; round < 2; round++) {
+            long startTime = SystemClock.elapsedRealtimeNanos();
+            for (long row : lookups) {
+                assertTrue(store.seek(row));
+                store.mean();
+            }
+            storeTime = SystemClock.elapsedRealtimeNanos() - startTime;
+
+            startTime = SystemClock.elapsedRealtimeNanos();
+            for (long row : lookups) {
+                try (Cursor cursor = database.rawQuery(SQL_MEAN, new String[]{String.valueOf(row)})) {
+                    assertTrue(cursor.moveToFirst());
+                    DictionarySearch.formatMean(cursor.getString(0));
+                }
+            }
+            sqlTime = SystemClock.elapsedRealtimeNanos() - startTime;
+        }
+        Log.i(TAG, "Store seek and mean: " + storeTime / LOOKUPS / 1000 + " us, SQL mean: "
+                + sqlTime / LOOKUPS / 1000 + " us per lookup over " + rows.size() + " rows, store "
+                + helper.getDefinitionsPath().length() + " bytes.");
+
+        assertTrue(store.seek(lookups[0]));
+        try (Cursor cursor = database.rawQuery(SQL_MEAN, new String[]{String.valueOf(lookups[0])})) {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(DictionarySearch.formatMean(cursor.getString(0)), store.mean());
+        }
+        store.close();
+        helper.close();
+    }
+}
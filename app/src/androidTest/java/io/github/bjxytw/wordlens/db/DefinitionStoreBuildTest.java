@@ -0,0 +1,74 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class DefinitionStoreBuildTest {
+    private SQLiteDatabase database;
+    private File file;
+
+    @Before
+    public void setUp() {
+        database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE items(item_id INTEGER PRIMARY KEY, word TEXT, mean TEXT, level INTEGER)");
+        database.execSQL("INSERT INTO items(word, mean, level) VALUES('apple', 'りんご', 1)");
+        database.execSQL("INSERT INTO items(word, mean, level) VALUES('city', '都市 / 都会', 1)");
+        Context context = InstrumentationRegistry.getTargetContext();
+        file = new File(context.getCacheDir(), "definitions_test.defs");
+        if (file.exists()) assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        if (file.exists()) assertTrue(file.delete());
+    }
+
+    @Test
+    public void rebuildsStaleStoreFromMeanings() throws IOException {
+        DefinitionStore.build(database, file);
+        database.execSQL("CREATE TABLE dictionary_info(name TEXT PRIMARY KEY, value TEXT)");
+        database.execSQL("INSERT INTO dictionary_info VALUES('data_version', '2')");
+        database.execSQL("UPDATE items SET mean='大都市' WHERE item_id=2");
+        database.execSQL("INSERT INTO items(word, mean, level) VALUES('take', '…を取る', 1)");
+
+        assertNull(DefinitionStore.load(file, 2));
+        assertTrue(DefinitionStore.buildIfStale(file, database));
+        assertFalse(DefinitionStore.buildIfStale(file, database));
+        DefinitionStore store = DefinitionStore.load(file, 2);
+        assertNotNull(store);
+        assertEquals(3, store.size());
+        assertTrue(store.seek(1));
+        assertEquals("りんご", store.mean());
+        assertTrue(store.seek(2));
+        assertEquals("大都市", store.mean());
+        assertTrue(store.seek(3));
+        assertEquals("…を取る", store.mean());
+        store.close();
+    }
+
+    @Test
+    public void skipsRowsWithoutMeaning() throws IOException {
+        database.execSQL("INSERT INTO items(word, mean, level) VALUES('blank', NULL, 1)");
+        DefinitionStore.build(database, file);
+        DefinitionStore store = DefinitionStore.load(file, DictionaryUpdater.BASE_DATA_VERSION);
+        assertNotNull(store);
+        assertEquals(2, store.size());
+        assertFalse(store.seek(3));
+        store.close();
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+@RunWith(AndroidJUnit4.class)
+public class FuzzyMatcherBenchmarkTest {
+    private static final String TAG = "FuzzyMatcherBenchmark";
+    private static final long TIME_BUDGET_NANOS = 2000000L;
+    private static final int CANDIDATE_BUDGET = 64;
+    private static final int KEY_COUNT = 50000;
+    private static final int LOOKUPS = 2000;
+
+    @Test
+    public void measuresLookups() {
+        Random random = new Random(5);
+        TreeSet<String> keySet = new TreeSet<>();
+        while (keySet.size() < KEY_COUNT) {
+            int length = 3 + random.nextInt(10);
+            StringBuilder key = new StringBuilder(length);
+            for (int i = 0; i < length; i++) key.append((char) ('a' + Math.min(random.nextInt(26), random.nextInt(26))));
+            keySet.add(key.toString());
+        }
+        String[] keys = keySet.toArray(new String[0]);
+        long buildStart = SystemClock.elapsedRealtime();
+        FuzzyMatcher matcher = new FuzzyMatcher(keys, new int[keys.length], TIME_BUDGET_NANOS, CANDIDATE_BUDGET);
+        Log.i(TAG, "Built for " + keys.length + " keys in "
+                + (SystemClock.elapsedRealtime() - buildStart) + " ms.");
+
+        long totalNanos = 0;
+        long slowest = 0;
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < LOOKUPS; i++) {
+                char[] word = keys[random.nextInt(keys.length)].toCharArray();
+                word[random.nextInt(word.length)] = "10|5rn".charAt(random.nextInt(6));
+                long lookupStart = SystemClock.elapsedRealtimeNanos();
+                matcher.match(new String(word));
+                long elapsed = SystemClock.elapsedRealtimeNanos() - lookupStart;
+                if (round == 1) {
+                    totalNanos += elapsed;
+                    slowest = Math.max(slowest, elapsed);
+                }
+            }
+        }
+        Log.i(TAG, totalNanos / LOOKUPS + " ns per lookup, slowest " + slowest + " ns. "
+                + matcher.stats());
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class MappedHeadwordIndexBenchmarkTest {
+    private static final String TAG = "MappedIndexBenchmark";
+    private static final int LOOKUPS = 5000;
+
+    @Test
+    public void comparesWithSqlIndex() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        DatabaseHelper helper = new DatabaseHelper(context);
+        SQLiteDatabase database = helper.getReadableDatabase();
+        assertNotNull(database);
+        MappedHeadwordIndex.buildIfStale(helper.getIndexPath(), database);
+
+        List<String> keys = new ArrayList<>();
+        try (Cursor cursor = database.rawQuery(
+                "SELECT DISTINCT word_key FROM items WHERE word_key IS NOT NULL", null)) {
+            while (cursor.moveToNext()) keys.add(cursor.getString(0));
+        }
+        Random random = new Random(7);
+        String[] lookups = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            String key = keys.get(random.nextInt(keys.size()));
+            // One lookup in four misses, as most recognized tokens are not headwords.
+            lookups[i] = i % 4 == 0 ? key + "qz" : key;
+        }
+
+        long pssBefore = Debug.getPss();
+        long rssBefore = readRssKb();
+        MappedHeadwordIndex mapped = MappedHeadwordIndex.load(helper.getIndexPath(),
+                DictionaryUpdater.readDataVersion(database));
+        assertNotNull(mapped);
+        SqlHeadwordIndex sql = new SqlHeadwordIndex(database);
+
+        long mappedTime = 0;
+        long sqlTime = 0;
+        for (int round = 0; round < 2; round++) {
+            long startTime = SystemClock.elapsedRealtimeNanos();
+            for (String key : lookups) mapped.findRows(key);
+            mappedTime = SystemClock.elapsedRealtimeNanos() - startTime;
+
+            startTime = SystemClock.elapsedRealtimeNanos();
+            for (String key : lookups) sql.findRows(key);
+            sqlTime = SystemClock.elapsedRealtimeNanos() - startTime;
+        }
+        long pssAfter = Debug.getPss();
+        long rssAfter = readRssKb();
+        Log.i(TAG, "Mapped: " + mappedTime / LOOKUPS / 1000 + " us, SQL: " + sqlTime / LOOKUPS / 1000
+                + " us per lookup over " + keys.size() + " keys. Index file "
+                + helper.getIndexPath().length() + " bytes, PSS " + pssBefore + " -> " + pssAfter
+                + " kB, RSS " + rssBefore + " -> " + rssAfter + " kB.");
+
+        for (int i = 0; i < 200; i++)
+            assertArrayEquals(lookups[i], sql.findRows(lookups[i]), mapped.findRows(lookups[i]));
+        helper.close();
+    }
+
+    private static long readRssKb() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:"))
+                    return Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+            }
+        }
+        return -1;
+    }
+}
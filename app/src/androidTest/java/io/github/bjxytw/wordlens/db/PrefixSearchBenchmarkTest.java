@@ -0,0 +1,51 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+@RunWith(AndroidJUnit4.class)
+public class PrefixSearchBenchmarkTest {
+    private static final String TAG = "PrefixSearchBenchmark";
+    private static final int UNRANKED = Integer.MAX_VALUE;
+    private static final int KEY_COUNT = 50000;
+    private static final int WORDS = 2000;
+
+    @Test
+    public void measuresKeystrokes() {
+        Random random = new Random(11);
+        TreeSet<String> keySet = new TreeSet<>();
+        while (keySet.size() < KEY_COUNT) {
+            int length = 1 + random.nextInt(10);
+            StringBuilder key = new StringBuilder(length);
+            for (int i = 0; i < length; i++) key.append((char) ('a' + Math.min(random.nextInt(26), random.nextInt(26))));
+            keySet.add(key.toString());
+        }
+        String[] keys = keySet.toArray(new String[0]);
+        int[] ranks = new int[keys.length];
+        for (int i = 0; i < ranks.length; i++) ranks[i] = random.nextInt(3) == 0 ? UNRANKED : random.nextInt(12) + 1;
+        PrefixSearch search = new PrefixSearch(keys, keys.clone(), ranks);
+
+        int keystrokes = 0;
+        long startTime = 0;
+        for (int round = 0; round < 2; round++) {
+            if (round == 1) startTime = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < WORDS; i++) {
+                String word = keys[random.nextInt(keys.length)];
+                for (int length = 1; length <= word.length(); length++) {
+                    search.suggest(word.substring(0, length), 8);
+                    if (round == 1) keystrokes++;
+                }
+            }
+        }
+        Log.i(TAG, (SystemClock.elapsedRealtimeNanos() - startTime) / keystrokes
+                + " ns per keystroke over " + keys.length + " keys.");
+    }
+}
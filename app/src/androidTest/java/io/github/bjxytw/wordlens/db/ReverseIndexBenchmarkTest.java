@@ -0,0 +1,121 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.List;
+
+import io.github.bjxytw.wordlens.data.DictionaryData;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class ReverseIndexBenchmarkTest {
+    private static final String TAG = "ReverseIndexBenchmark";
+    private static final String[] COMMON_QUERIES = {"する", "こと", "人", "の", "取る", "ピッチャー", "大都市"};
+    private SQLiteDatabase source;
+    private File indexFile;
+
+    @Before
+    public void setUp() {
+        source = SQLiteDatabase.create(null);
+        source.execSQL("CREATE TABLE items(item_id INTEGER PRIMARY KEY, word TEXT, mean TEXT, level INTEGER)");
+        source.execSQL("INSERT INTO items(word, mean, level) VALUES('apple', 'りんご', 1)");
+        source.execSQL("INSERT INTO items(word, mean, level) VALUES('city', '都市,都会', 1)");
+        source.execSQL("INSERT INTO items(word, mean, level) VALUES('metropolis', '《米俗》大都市', 0)");
+        source.execSQL("INSERT INTO items(word, mean, level) VALUES('take', '…を取る', 1)");
+        Context context = InstrumentationRegistry.getTargetContext();
+        indexFile = new File(context.getCacheDir(), "reverse_test.fts");
+        SQLiteDatabase.deleteDatabase(indexFile);
+    }
+
+    @After
+    public void tearDown() {
+        source.close();
+        SQLiteDatabase.deleteDatabase(indexFile);
+    }
+
+    @Test
+    public void findsMeaningsBySubstring() {
+        assertTrue(ReverseIndex.build(source, indexFile, null));
+        ReverseIndex index = ReverseIndex.open(indexFile);
+        assertNotNull(index);
+        assertArrayEquals(new long[]{2, 3}, index.find("都市", 10));
+        assertArrayEquals(new long[]{3}, index.find("大都市", 10));
+        assertArrayEquals(new long[]{2, 3}, index.find("都", 10));
+        assertArrayEquals(new long[]{4}, index.find("取る", 10));
+        assertArrayEquals(new long[]{2}, index.find("都市", 1));
+        assertEquals(0, index.find("市都", 10).length);
+        index.close();
+    }
+
+    @Test
+    public void ranksBeforeLimit() {
+        source.execSQL("DELETE FROM items");
+        for (int i = 0; i < 300; i++)
+            source.execSQL("INSERT INTO items(word, mean, level) VALUES('w" + i + "', '《古》大きな都市の一部', 0)");
+        source.execSQL("INSERT INTO items(word, mean, level) VALUES('city', '都市', 1)");
+        assertTrue(ReverseIndex.build(source, indexFile, null));
+        ReverseIndex index = ReverseIndex.open(indexFile);
+        assertNotNull(index);
+        assertArrayEquals(new long[]{301}, index.find("都市", 1));
+        index.close();
+    }
+
+    @Test
+    public void resumesInterruptedBuild() {
+        Thread.currentThread().interrupt();
+        assertFalse(ReverseIndex.build(source, indexFile, null));
+        assertTrue(Thread.interrupted());
+
+        final int[] progress = new int[2];
+        assertTrue(ReverseIndex.build(source, indexFile, new DictionarySearch.ReverseIndexListener() {
+            @Override
+            public void onIndexProgress(int indexedRows, int totalRows) {
+                progress[0] = indexedRows;
+                progress[1] = totalRows;
+            }
+        }));
+        assertEquals(4, progress[0]);
+        assertEquals(4, progress[1]);
+
+        ReverseIndex.reset(indexFile);
+        ReverseIndex index = ReverseIndex.open(indexFile);
+        assertNotNull(index);
+        assertEquals(0, index.find("りんご", 10).length);
+        index.close();
+    }
+
+    @Test
+    public void installedDictionaryQueriesStayFast() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        DictionarySearch dictionary = new DictionarySearch(context, null);
+        assertTrue(dictionary.isAvailable());
+
+        long startTime = SystemClock.elapsedRealtime();
+        assertTrue(dictionary.buildReverseIndex(null));
+        Log.i(TAG, "Build or resume took " + (SystemClock.elapsedRealtime() - startTime) + " ms.");
+
+        for (String query : COMMON_QUERIES) dictionary.searchReverse(query, 30);
+        for (String query : COMMON_QUERIES) {
+            long queryStart = SystemClock.elapsedRealtime();
+            List<DictionaryData> results = dictionary.searchReverse(query, 30);
+            long elapsed = SystemClock.elapsedRealtime() - queryStart;
+            Log.i(TAG, query + ": " + results.size() + " results in " + elapsed + " ms.");
+            assertFalse(query, results.isEmpty());
+            assertTrue(query + " took " + elapsed + " ms", elapsed < 200);
+        }
+        dictionary.close();
+    }
+}
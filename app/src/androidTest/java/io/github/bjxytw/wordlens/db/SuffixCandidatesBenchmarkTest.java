@@ -0,0 +1,119 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class SuffixCandidatesBenchmarkTest {
+    private static final String TAG = "SuffixCandidatesBenchmark";
+    private static final String[] SUFFIXES = {
+            "ied", "ies", "ier", "iest", "ing", "ed", "er", "est", "es", "s"
+    };
+    private static final String[] WORDS = {
+            "running", "stopped", "bigger", "cried", "happiest", "goes", "boxes", "plays",
+            "walked", "seeing", "x-rays", "tree"
+    };
+    private static final int WARMUP_ROUNDS = 20000;
+    private static final int ROUNDS = 100000;
+
+    private int accepted;
+
+    @Test
+    public void keepsUpWithStringCascade() {
+        SuffixCandidates suffixes = new SuffixCandidates();
+        SuffixCandidates.Sink counting = new SuffixCandidates.Sink() {
+            @Override
+            public boolean accept(char[] buffer, int length) {
+                accepted += length;
+                return false;
+            }
+        };
+        // Inflections.build turns every candidate into a String to look it up.
+        SuffixCandidates.Sink copying = new SuffixCandidates.Sink() {
+            @Override
+            public boolean accept(char[] buffer, int length) {
+                accepted += new String(buffer, 0, length).length();
+                return false;
+            }
+        };
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            for (String word : WORDS) {
+                suffixes.forEach(word, counting);
+                suffixes.forEach(word, copying);
+                accepted += referenceCandidates(word).size();
+            }
+        }
+
+        long startTime = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (String word : WORDS) suffixes.forEach(word, counting);
+        }
+        long trieTime = SystemClock.elapsedRealtimeNanos() - startTime;
+        startTime = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (String word : WORDS) suffixes.forEach(word, copying);
+        }
+        long copyTime = SystemClock.elapsedRealtimeNanos() - startTime;
+        startTime = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (String word : WORDS) accepted += referenceCandidates(word).size();
+        }
+        long referenceTime = SystemClock.elapsedRealtimeNanos() - startTime;
+        Log.i(TAG, "Trie: " + trieTime / ROUNDS + " ns, trie with strings: " + copyTime / ROUNDS
+                + " ns, string cascade: " + referenceTime / ROUNDS + " ns per "
+                + WORDS.length + " words (" + accepted + ").");
+        assertTrue(copyTime < referenceTime);
+    }
+
+    // The string-based cascade SuffixCandidates replaced.
+    private static List<String> referenceCandidates(String word) {
+        List<String> candidates = new ArrayList<>();
+        String wordEnd = null;
+        for (String end : SUFFIXES) {
+            if (end.length() < word.length() && word.endsWith(end)) {
+                wordEnd = end;
+                break;
+            }
+        }
+        if (wordEnd == null) return candidates;
+
+        int size = word.length();
+        int endSize = wordEnd.length();
+        String stem = word.substring(0, size - endSize);
+        switch (wordEnd) {
+            case "ied":
+            case "ies":
+            case "ier":
+            case "iest":
+                candidates.add(stem + 'y');
+                break;
+            case "ing":
+            case "ed":
+            case "er":
+            case "est":
+                if (endSize + 2 < size) {
+                    char char1 = word.charAt(size - endSize - 1);
+                    char char2 = word.charAt(size - endSize - 2);
+                    if (char1 == char2)
+                        candidates.add(word.substring(0, size - endSize - 2) + char1);
+                }
+            case "es":
+                candidates.add(stem + 'e');
+                candidates.add(stem);
+                break;
+            default:
+                candidates.add(stem);
+        }
+        return candidates;
+    }
+}
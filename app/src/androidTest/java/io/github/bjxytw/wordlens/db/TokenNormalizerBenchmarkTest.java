@@ -0,0 +1,69 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class TokenNormalizerBenchmarkTest {
+    private static final String TAG = "TokenNormalizerBenchmark";
+    private static final String REGEX_SYMBOL = "[!-/:-@\\[-`{-~]";
+    private static final String[] TOKENS = {
+            "apple", "(apple)", "\"look,", "world.", "it's", "co-operate", "–", "“quoted”",
+            "ﬁnal", "café", "ＷＯＲＤ", "well-known...", "e.g.", "naïve"
+    };
+    private static final int WARMUP_ROUNDS = 20000;
+    private static final int ROUNDS = 100000;
+
+    @Test
+    public void keepsUpWithLegacyTrim() {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            for (String token : TOKENS) {
+                clean(token);
+                legacyClean(token);
+            }
+        }
+
+        long startTime = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (String token : TOKENS) clean(token);
+        }
+        long tableTime = SystemClock.elapsedRealtimeNanos() - startTime;
+        startTime = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (String token : TOKENS) legacyClean(token);
+        }
+        long legacyTime = SystemClock.elapsedRealtimeNanos() - startTime;
+        Log.i(TAG, "Table: " + tableTime / ROUNDS + " ns, regex: " + legacyTime / ROUNDS
+                + " ns per " + TOKENS.length + " tokens.");
+        assertTrue(tableTime < legacyTime);
+    }
+
+    private static String clean(String token) {
+        String trimmed = TokenNormalizer.trim(token);
+        return trimmed == null ? null : TokenNormalizer.fold(trimmed);
+    }
+
+    // The regex-based trim TokenNormalizer replaced.
+    private static String legacyClean(String text) {
+        int size = text.length();
+        if (size > 0) {
+            int begin = 0;
+            int end = size;
+            if (text.substring(0, 1).matches(REGEX_SYMBOL))
+                begin = 1;
+            if (text.substring(size - 1).matches(REGEX_SYMBOL))
+                end = size - 1;
+
+            if (end - begin > 0)
+                return text.substring(begin, end);
+        }
+        return null;
+    }
+}
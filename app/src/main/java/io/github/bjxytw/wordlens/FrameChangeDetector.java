@@ -0,0 +1,100 @@
+package io.github.bjxytw.wordlens;
+
+import java.util.Locale;
+
+final class FrameChangeDetector {
+    private static final int GRID_COLUMNS = 16;
+    private static final int GRID_ROWS = 8;
+    private static final int SAMPLE_STEP = 2;
+
+    private final int[] current = new int[GRID_COLUMNS * GRID_ROWS];
+    private final int[] reference = new int[GRID_COLUMNS * GRID_ROWS];
+    private final int[] referenceArea = new int[4];
+    private volatile boolean hasReference;
+    private boolean currentValid;
+    private volatile float threshold;
+    private int currentLeft, currentTop, currentRight, currentBottom;
+    private long checked;
+    private long skipped;
+
+    FrameChangeDetector(float threshold) {
+        this.threshold = threshold;
+    }
+
+    // The mean difference of the cell averages, in luma levels, below which a frame counts as
+    // unchanged. Zero or less sends every frame to the recognizer.
+    void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    // Samples the Y plane of the NV21 frame inside the area into a grid of cell averages and
+    // compares it with the last accepted frame. Only called from the process thread.
+    boolean hasChanged(byte[] frame, int frameWidth, int frameHeight,
+                       int left, int top, int right, int bottom) {
+        checked++;
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(frameWidth, right);
+        bottom = Math.min(frameHeight, bottom);
+        int width = right - left;
+        int height = bottom - top;
+        currentValid = width >= GRID_COLUMNS && height >= GRID_ROWS;
+        if (!currentValid) return true;
+
+        for (int row = 0; row < GRID_ROWS; row++) {
+            int cellTop = top + row * height / GRID_ROWS;
+            int cellBottom = top + (row + 1) * height / GRID_ROWS;
+            for (int column = 0; column < GRID_COLUMNS; column++) {
+                int cellLeft = left + column * width / GRID_COLUMNS;
+                int cellRight = left + (column + 1) * width / GRID_COLUMNS;
+                int sum = 0;
+                int count = 0;
+                for (int y = cellTop; y < cellBottom; y += SAMPLE_STEP) {
+                    int offset = y * frameWidth;
+                    for (int x = cellLeft; x < cellRight; x += SAMPLE_STEP) {
+                        sum += frame[offset + x] & 0xff;
+                        count++;
+                    }
+                }
+                current[row * GRID_COLUMNS + column] = sum / count;
+            }
+        }
+        currentLeft = left;
+        currentTop = top;
+        currentRight = right;
+        currentBottom = bottom;
+
+        float limit = threshold;
+        if (limit <= 0 || !hasReference || left != referenceArea[0] || top != referenceArea[1]
+                || right != referenceArea[2] || bottom != referenceArea[3]) return true;
+        int difference = 0;
+        for (int i = 0; i < current.length; i++) difference += Math.abs(current[i] - reference[i]);
+        if (difference > limit * current.length) return true;
+        skipped++;
+        return false;
+    }
+
+    // Makes the frame last checked the one later frames are compared with.
+    void accept() {
+        System.arraycopy(current, 0, reference, 0, current.length);
+        referenceArea[0] = currentLeft;
+        referenceArea[1] = currentTop;
+        referenceArea[2] = currentRight;
+        referenceArea[3] = currentBottom;
+        hasReference = currentValid;
+    }
+
+    // Lets the next frame through, for when the last result can no longer be reused.
+    void reset() {
+        hasReference = false;
+    }
+
+    float skipRatio() {
+        return checked == 0 ? 0 : (float) skipped / checked;
+    }
+
+    String stats() {
+        return String.format(Locale.US, "Frames checked=%d, unchanged=%d (%.1f%%)",
+                checked, skipped, skipRatio() * 100);
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.bjxytw.wordlens;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+final class FrameCropper {
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+
+    static final class Crop {
+        final byte[] data;
+        final int left, top, width, height;
+
+        private Crop(byte[] data, int left, int top, int width, int height) {
+            this.data = data;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+        }
+
+        // The recognizer reports boxes in the crop rotated upright by 90 degrees. These map a
+        // box edge back to the unrotated camera frame.
+        int cameraLeft(int boxTop) {
+            return left + boxTop;
+        }
+
+        int cameraTop(int boxRight) {
+            return top + height - boxRight;
+        }
+
+        int cameraRight(int boxBottom) {
+            return left + boxBottom;
+        }
+
+        int cameraBottom(int boxLeft) {
+            return top + height - boxLeft;
+        }
+    }
+
+    // Copies the Y rows and interleaved VU rows of the NV21 frame inside the area into a
+    // pooled buffer. The area is widened to even bounds so every VU pair stays with its luma.
+    Crop crop(byte[] frame, int frameWidth, int frameHeight,
+              int left, int top, int right, int bottom) {
+        left = Math.max(0, left & ~1);
+        top = Math.max(0, top & ~1);
+        right = Math.min(frameWidth, (right + 1) & ~1);
+        bottom = Math.min(frameHeight, (bottom + 1) & ~1);
+        if (right <= left || bottom <= top) return null;
+
+        int width = right - left;
+        int height = bottom - top;
+        int lumaSize = width * height;
+        byte[] data = obtain(lumaSize + lumaSize / 2);
+
+        for (int row = 0; row < height; row++)
+            System.arraycopy(frame, (top + row) * frameWidth + left, data, row * width, width);
+        int chromaStart = frameWidth * frameHeight + (top / 2) * frameWidth + left;
+        for (int row = 0; row < height / 2; row++)
+            System.arraycopy(frame, chromaStart + row * frameWidth, data, lumaSize + row * width, width);
+
+        return new Crop(data, left, top, width, height);
+    }
+
+    void recycle(Crop crop) {
+        if (crop != null) buffers.offer(crop.data);
+    }
+
+    private byte[] obtain(int size) {
+        byte[] buffer = buffers.poll();
+        // The area only changes with the layout, so a buffer of another size is left for GC.
+        return buffer != null && buffer.length == size ? buffer : new byte[size];
+    }
+}
@@ -0,0 +1,181 @@
+package io.github.bjxytw.wordlens;
+
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.TextPaint;
+import android.text.style.ClickableSpan;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.bjxytw.wordlens.data.DictionaryData;
+import io.github.bjxytw.wordlens.data.LinkTextData;
+import io.github.bjxytw.wordlens.db.DictionarySearch;
+import io.github.bjxytw.wordlens.db.LookupExecutor;
+
+public class LinkSpanResolver {
+    private static final int CHUNK_SIZE = 64;
+    private static final int SCREENS_AHEAD = 1;
+    private final RecyclerView listView;
+    private final SenseAdapter adapter;
+    private final LookupExecutor dictionary;
+    private final LinkListener listener;
+    private final List<LinkSpan> pendingSpans = new ArrayList<>();
+    private final List<LinkSpan> resolvingSpans = new ArrayList<>();
+    private final Runnable resolveTask = new Runnable() {
+        @Override
+        public void run() {
+            resolveVisible();
+        }
+    };
+    private Spannable text;
+    private int generation;
+
+    public interface LinkListener {
+        void onLinkOpened(DictionaryData data);
+    }
+
+    LinkSpanResolver(RecyclerView listView, SenseAdapter adapter,
+                     LookupExecutor dictionary, LinkListener listener) {
+        this.listView = listView;
+        this.adapter = adapter;
+        this.dictionary = dictionary;
+        this.listener = listener;
+    }
+
+    public Spannable attach(DictionaryData data) {
+        generation++;
+        pendingSpans.clear();
+        resolvingSpans.clear();
+        dictionary.cancel(LookupExecutor.Slot.LINKS);
+
+        text = new SpannableString(data.meanText());
+        List<LinkTextData> links = data.links();
+        boolean resolved = links != null;
+        if (!resolved) links = DictionarySearch.findLinkCandidates(data.meanText(), data.wordText());
+        for (LinkTextData link : links) {
+            LinkSpan span = new LinkSpan(link, resolved);
+            text.setSpan(span, link.getStart(), link.getEnd(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            if (!resolved) pendingSpans.add(span);
+        }
+        return text;
+    }
+
+    public void resolveWhenLaidOut() {
+        listView.removeCallbacks(resolveTask);
+        listView.post(resolveTask);
+    }
+
+    public void resolveVisible() {
+        if (!resolvingSpans.isEmpty() || pendingSpans.isEmpty()) return;
+        if (adapter.getText() != text) return;
+        LinearLayoutManager layoutManager = (LinearLayoutManager) listView.getLayoutManager();
+        if (layoutManager == null) return;
+        int firstRow = layoutManager.findFirstVisibleItemPosition();
+        int lastRow = layoutManager.findLastVisibleItemPosition();
+        if (firstRow == RecyclerView.NO_POSITION || lastRow == RecyclerView.NO_POSITION) return;
+
+        lastRow = Math.min(lastRow + (lastRow - firstRow + 1) * SCREENS_AHEAD, adapter.getItemCount() - 1);
+        int start = adapter.rowStart(firstRow);
+        int end = adapter.rowEnd(lastRow);
+
+        Set<String> words = new HashSet<>();
+        Iterator<LinkSpan> iterator = pendingSpans.iterator();
+        while (iterator.hasNext() && resolvingSpans.size() < CHUNK_SIZE) {
+            LinkSpan span = iterator.next();
+            if (span.link.getEnd() <= start || span.link.getStart() >= end) continue;
+            iterator.remove();
+            resolvingSpans.add(span);
+            words.add(span.link.getText());
+        }
+        if (resolvingSpans.isEmpty()) return;
+
+        final int requestGeneration = generation;
+        dictionary.searchAll(LookupExecutor.Slot.LINKS, words,
+                new LookupExecutor.Callback<Map<String, DictionaryData>>() {
+                    @Override
+                    public void onResult(Map<String, DictionaryData> results) {
+                        if (requestGeneration != generation) return;
+                        int chunkStart = Integer.MAX_VALUE;
+                        int chunkEnd = 0;
+                        for (LinkSpan span : resolvingSpans) {
+                            applyResult(span, results.get(DictionarySearch.normalize(span.link.getText())));
+                            chunkStart = Math.min(chunkStart, span.link.getStart());
+                            chunkEnd = Math.max(chunkEnd, span.link.getEnd());
+                        }
+                        resolvingSpans.clear();
+                        adapter.invalidateRange(chunkStart, chunkEnd);
+                        resolveVisible();
+                    }
+                });
+    }
+
+    private void onLinkClick(final LinkSpan span) {
+        if (span.data != null) {
+            listener.onLinkOpened(span.data);
+            return;
+        }
+
+        // The on-demand lookup replaces any chunk still queued on the LINKS slot.
+        pendingSpans.addAll(resolvingSpans);
+        resolvingSpans.clear();
+        pendingSpans.remove(span);
+
+        final int requestGeneration = generation;
+        LookupExecutor.Callback<DictionaryData> callback = new LookupExecutor.Callback<DictionaryData>() {
+            @Override
+            public void onResult(DictionaryData data) {
+                if (requestGeneration != generation) return;
+                applyResult(span, data);
+                if (data != null) {
+                    listener.onLinkOpened(data);
+                } else {
+                    adapter.invalidateRange(span.link.getStart(), span.link.getEnd());
+                    resolveVisible();
+                }
+            }
+        };
+        if (span.link.getRow() != LinkTextData.NO_ROW)
+            dictionary.searchRow(LookupExecutor.Slot.LINKS, span.link.getRow(), callback);
+        else dictionary.search(LookupExecutor.Slot.LINKS, span.link.getText(), callback);
+    }
+
+    private void applyResult(LinkSpan span, DictionaryData data) {
+        if (data != null) {
+            span.data = data;
+            span.resolved = true;
+        } else {
+            text.removeSpan(span);
+        }
+    }
+
+    private class LinkSpan extends ClickableSpan {
+        private final LinkTextData link;
+        private boolean resolved;
+        private DictionaryData data;
+
+        LinkSpan(LinkTextData link, boolean resolved) {
+            this.link = link;
+            this.resolved = resolved;
+        }
+
+        @Override
+        public void updateDrawState(@NonNull TextPaint ds) {
+            if (resolved) super.updateDrawState(ds);
+        }
+
+        @Override
+        public void onClick(@NonNull View widget) {
+            onLinkClick(this);
+        }
+    }
+}
@@ -14,29 +14,29 @@ import android.os.Handler;
 import android.preference.PreferenceManager;
 import android.speech.tts.TextToSpeech;
 import android.text.Editable;
-import android.text.Spannable;
-import android.text.SpannableString;
 import android.text.TextWatcher;
-import android.text.method.LinkMovementMethod;
-import android.text.style.ClickableSpan;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.inputmethod.InputMethodManager;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.RelativeLayout;
-import android.widget.ScrollView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.ListPopupWindow;
 import androidx.appcompat.widget.Toolbar;
 import androidx.browser.customtabs.CustomTabsIntent;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
 import com.google.android.material.snackbar.Snackbar;
@@ -47,31 +47,35 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import io.github.bjxytw.wordlens.camera.CameraCursorGraphic;
 import io.github.bjxytw.wordlens.camera.CameraPreview;
 import io.github.bjxytw.wordlens.camera.CameraSource;
 import io.github.bjxytw.wordlens.components.LockableBottomSheetBehavior;
 import io.github.bjxytw.wordlens.data.DictionaryData;
-import io.github.bjxytw.wordlens.data.LinkTextData;
+import io.github.bjxytw.wordlens.db.DatabaseHelper;
 import io.github.bjxytw.wordlens.db.DictionarySearch;
+import io.github.bjxytw.wordlens.db.LookupExecutor;
+import io.github.bjxytw.wordlens.db.PhraseMatcher;
+import io.github.bjxytw.wordlens.db.TokenNormalizer;
 import io.github.bjxytw.wordlens.settings.SettingsActivity;
 import io.github.bjxytw.wordlens.settings.SettingsFragment;
 
 public final class MainActivity extends AppCompatActivity
         implements TextRecognition.TextRecognitionListener,
         CameraSource.AutoFocusFinishedListener,
+        DatabaseHelper.InstallListener, DictionarySearch.ReverseIndexListener,
         TextToSpeech.OnInitListener, TextWatcher {
     private static final String TAG = "MainActivity";
-    private static final String REGEX_DICTIONARY_LINK = "([a-zA-Z]{2,}+)";
+    private static final int MAX_SUGGESTIONS = 8;
+    private static final int MAX_REVERSE_RESULTS = 30;
     private FirebaseAnalytics analytics;
     private CameraSource camera;
     private CameraPreview preview;
     private CameraCursorGraphic cameraCursor;
     private TextRecognition textRecognition;
-    private DictionarySearch dictionary;
+    private LookupExecutor dictionary;
+    private LinkSpanResolver linkResolver;
     private TextToSpeech textToSpeech;
     private LockableBottomSheetBehavior bottomSheetBehavior;
     private ImageButton pauseButton;
@@ -82,11 +86,32 @@ public final class MainActivity extends AppCompatActivity
     private ImageButton expandButton;
     private EditText searchTextView;
     private TextView headTextView;
-    private TextView meanTextView;
-    private ScrollView dictionaryScrollView;
+    private RecyclerView meanListView;
+    private final SenseAdapter senseAdapter = new SenseAdapter();
+    private View dictionaryContentLayout;
     private String searchEngine;
     private Integer zoomRatio;
+    private float changeThreshold;
+    private int previewBufferCount;
+    private int maxInFlight;
     private LinkedList<DictionaryData> linkHistory = new LinkedList<>();
+    private ListPopupWindow suggestionPopup;
+    private ArrayAdapter<String> suggestionAdapter;
+    private final List<String> suggestionWords = new ArrayList<>();
+    private final Handler searchHandler = new Handler();
+    private final Runnable searchTask = new Runnable() {
+        @Override
+        public void run() {
+            if (editingText == null || editingText.length() == 0) return;
+            dictionary.search(LookupExecutor.Slot.ENTRY, editingText,
+                    new LookupExecutor.Callback<DictionaryData>() {
+                        @Override
+                        public void onResult(DictionaryData dictData) {
+                            if (dictData != null) showSearchResult(dictData);
+                        }
+                    });
+        }
+    };
     private String editingText;
     private boolean dictionaryExpanded;
     private boolean isCameraPaused;
@@ -96,6 +121,8 @@ public final class MainActivity extends AppCompatActivity
     private boolean useCustomTabs;
     private boolean cursorVisible;
     private boolean linkToExpand;
+    private boolean reverseSearch;
+    private int reverseIndexPercent;
 
     @SuppressLint("ClickableViewAccessibility")
     @Override
@@ -113,8 +140,8 @@ public final class MainActivity extends AppCompatActivity
         ttsButton = findViewById(R.id.textToSpeechButton);
         searchTextView = findViewById(R.id.dictionarySearchText);
         headTextView = findViewById(R.id.headText);
-        meanTextView = findViewById(R.id.meanText);
-        dictionaryScrollView = findViewById(R.id.dictionaryScrollView);
+        meanListView = findViewById(R.id.meanList);
+        dictionaryContentLayout = findViewById(R.id.dictionaryContentLayout);
         expandButton = findViewById(R.id.expandButton);
         ImageButton searchButton = findViewById(R.id.searchButton);
 
@@ -138,6 +165,18 @@ public final class MainActivity extends AppCompatActivity
 
         searchTextView.addTextChangedListener(this);
 
+        suggestionAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+        suggestionPopup = new ListPopupWindow(this);
+        suggestionPopup.setAnchorView(searchTextView);
+        suggestionPopup.setAdapter(suggestionAdapter);
+        suggestionPopup.setInputMethodMode(ListPopupWindow.INPUT_METHOD_NEEDED);
+        suggestionPopup.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                selectSuggestion(suggestionWords.get(position));
+            }
+        });
+
         searchTextView.setOnTouchListener(new View.OnTouchListener() {
             @Override
             public boolean onTouch(View v, MotionEvent event) {
@@ -147,24 +186,49 @@ public final class MainActivity extends AppCompatActivity
             }
         });
 
-        dictionaryScrollView.setOnTouchListener(new View.OnTouchListener() {
+        meanListView.setLayoutManager(new LinearLayoutManager(this));
+        meanListView.setAdapter(senseAdapter);
+        senseAdapter.setText(getString(R.string.tutorial_text));
+        meanListView.addOnItemTouchListener(new RecyclerView.SimpleOnItemTouchListener() {
             @Override
-            public boolean onTouch(View v, MotionEvent event) {
+            public boolean onInterceptTouchEvent(@NonNull RecyclerView rv, @NonNull MotionEvent e) {
                 cancelEdit();
                 return false;
             }
         });
 
-        meanTextView.setOnTouchListener(new View.OnTouchListener() {
+        textRecognition = new TextRecognition(cameraCursor, this);
+        dictionary = new LookupExecutor(this, this, this);
+        dictionary.whenReady(new LookupExecutor.Callback<Boolean>() {
             @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                cancelEdit();
-                return false;
+            public void onResult(Boolean available) {
+                if (!available) {
+                    Toast.makeText(MainActivity.this,
+                            R.string.dictionary_failed, Toast.LENGTH_LONG).show();
+                } else {
+                    if (linkHistory.isEmpty()) senseAdapter.setText(getString(R.string.tutorial_text));
+                    dictionary.loadPhraseMatcher(new LookupExecutor.Callback<PhraseMatcher>() {
+                        @Override
+                        public void onResult(PhraseMatcher matcher) {
+                            textRecognition.setPhraseMatcher(matcher);
+                        }
+                    });
+                }
+            }
+        });
+        linkResolver = new LinkSpanResolver(meanListView, senseAdapter, dictionary,
+                new LinkSpanResolver.LinkListener() {
+                    @Override
+                    public void onLinkOpened(DictionaryData data) {
+                        openLink(data);
+                    }
+                });
+        meanListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                linkResolver.resolveVisible();
             }
         });
-
-        textRecognition = new TextRecognition(cameraCursor, this);
-        dictionary = new DictionarySearch(this);
         textToSpeech = new TextToSpeech(this, this);
 
         analytics = FirebaseAnalytics.getInstance(this);
@@ -180,7 +244,12 @@ public final class MainActivity extends AppCompatActivity
         switchCameraFlash(isCameraFlashed, false);
         switchCameraZoom(isCameraZoomed, false);
         loadPreferences();
-        if (camera != null) camera.setZoomRatio(zoomRatio);
+        if (camera != null) {
+            camera.setZoomRatio(zoomRatio);
+            camera.setPreviewBufferCount(previewBufferCount);
+        }
+        textRecognition.setChangeThreshold(changeThreshold);
+        textRecognition.setMaxInFlight(maxInFlight);
         cameraCursor.setAreaGraphics(cursorVisible, CameraCursorGraphic.AREA_DEFAULT_COLOR);
         BrowserOpened = false;
         if (!dictionaryExpanded) startCamera();
@@ -194,8 +263,11 @@ public final class MainActivity extends AppCompatActivity
 
     @Override
     public void onDestroy() {
-        if (camera != null) camera.release();
-        if (dictionary != null) dictionary.close();
+        if (camera != null) {
+            camera.release();
+            logRecognitionStats();
+        }
+        if (dictionary != null) dictionary.shutdown();
         if (textToSpeech != null) {
             textToSpeech.stop();
             textToSpeech.shutdown();
@@ -236,6 +308,8 @@ public final class MainActivity extends AppCompatActivity
             return;
         }
 
+        // Results that arrived while paused were dropped, so the frame on screen must be read again.
+        textRecognition.resetChangeDetection();
         pauseButton.setImageResource(R.drawable.ic_pause);
         isCameraPaused = false;
     }
@@ -293,47 +367,56 @@ public final class MainActivity extends AppCompatActivity
         useCustomTabs = preferences.getBoolean(SettingsFragment.KEY_CUSTOM_TABS, true);
         String zoomRatioValue = preferences.getString(SettingsFragment.KEY_ZOOM_RATIO, "200");
         zoomRatio = zoomRatioValue == null ? null : Integer.valueOf(zoomRatioValue);
+        String changeThresholdValue = preferences.getString(SettingsFragment.KEY_CHANGE_THRESHOLD, "6");
+        changeThreshold = changeThresholdValue == null ? 0 : Float.valueOf(changeThresholdValue);
+        String previewBuffersValue = preferences.getString(SettingsFragment.KEY_PREVIEW_BUFFERS, "3");
+        previewBufferCount = previewBuffersValue == null ? 3 : Integer.valueOf(previewBuffersValue);
+        String maxInFlightValue = preferences.getString(SettingsFragment.KEY_MAX_IN_FLIGHT, "2");
+        maxInFlight = maxInFlightValue == null ? 2 : Integer.valueOf(maxInFlightValue);
         cursorVisible = preferences.getBoolean(SettingsFragment.KEY_CURSOR_VISIBLE, false);
         linkToExpand = preferences.getBoolean(SettingsFragment.KEY_LINK_EXPAND, false);
     }
 
+    private void logRecognitionStats() {
+        Bundle params = new Bundle();
+        params.putLong("frames_delivered", camera.getDeliveredFrameCount());
+        params.putLong("frames_superseded", camera.getSupersededFrameCount());
+        params.putLong("frames_dropped", camera.getDroppedFrameCount());
+        params.putLong("recognitions_submitted", textRecognition.getSubmittedCount());
+        params.putLong("recognitions_busy", textRecognition.getBusyCount());
+        params.putLong("recognitions_stale", textRecognition.getStaleCount());
+        params.putLong("recognitions_failed", textRecognition.getFailedCount());
+        analytics.logEvent("recognition_stats", params);
+    }
+
     private void setDictionaryText(DictionaryData data) {
+        headTextView.setText(data.wordText());
+        senseAdapter.setText(linkResolver.attach(data));
+        meanListView.scrollToPosition(0);
+        linkResolver.resolveWhenLaidOut();
+    }
 
-        Matcher matcher = Pattern.compile(REGEX_DICTIONARY_LINK).matcher(data.meanText());
-        List<LinkTextData> linkDataList = new ArrayList<>();
-        while (matcher.find()) {
-            String findText =  matcher.group();
-            if (!findText.equalsIgnoreCase(data.wordText())) {
-                linkDataList.add(new LinkTextData(matcher.start(), matcher.end(), findText));
-            }
+    private void openLink(DictionaryData linkDictionaryData) {
+        if (linkHistory.size() <= 1) {
+            dictionaryBackButton.setVisibility(View.VISIBLE);
         }
 
-        SpannableString spanMeanText = new SpannableString(data.meanText());
-        for (final LinkTextData linkData : linkDataList) {
-            final DictionaryData linkDictionaryData = dictionary.searchDirect(linkData.getText());
-            if (linkDictionaryData != null) {
-                spanMeanText.setSpan(new ClickableSpan() {
-                    @Override
-                    public void onClick(@NonNull View widget) {
-                        if (linkHistory.size() <= 1) {
-                            dictionaryBackButton.setVisibility(View.VISIBLE);
-                        }
+        linkHistory.add(linkDictionaryData);
+        setDictionaryText(linkDictionaryData);
 
-                        linkHistory.add(linkDictionaryData);
-                        setDictionaryText(linkDictionaryData);
-
-                        if (linkToExpand) {
-                            expandDictionaryLayout(true);
-                        }
-                    }
-                }, linkData.getStart(), linkData.getEnd(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            }
+        if (linkToExpand) {
+            expandDictionaryLayout(true);
         }
+    }
 
-        headTextView.setText(data.wordText());
-        meanTextView.setText(spanMeanText);
-        meanTextView.setMovementMethod(LinkMovementMethod.getInstance());
-        dictionaryScrollView.scrollTo(0, 0);
+    private void showSearchResult(DictionaryData dictData) {
+        setDictionaryText(dictData);
+
+        dictionaryBackButton.setVisibility(View.GONE);
+        ttsButton.setVisibility(View.VISIBLE);
+        headTextView.setVisibility(View.VISIBLE);
+        linkHistory.clear();
+        linkHistory.add(dictData);
     }
 
     private void expandDictionaryLayout(boolean expand) {
@@ -344,9 +427,10 @@ public final class MainActivity extends AppCompatActivity
             if (camera != null) startCamera();
         }
 
-        dictionaryScrollView.getLayoutParams().height =
+        dictionaryContentLayout.getLayoutParams().height =
                 expand ? RelativeLayout.LayoutParams.MATCH_PARENT : (int) getResources().getDimension(R.dimen.dictionary_scroll_view_height);
-        dictionaryScrollView.requestLayout();
+        dictionaryContentLayout.requestLayout();
+        linkResolver.resolveWhenLaidOut();
         bottomSheetBehavior.setState(expand ? BottomSheetBehavior.STATE_EXPANDED : BottomSheetBehavior.STATE_COLLAPSED);
         expandButton.setImageResource(expand ? R.drawable.ic_fold_24dp  : R.drawable.ic_expand_24dp);
         dictionaryExpanded = expand;
@@ -395,8 +479,9 @@ public final class MainActivity extends AppCompatActivity
 
     private void cancelEdit() {
         ((InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE))
-                .hideSoftInputFromWindow(dictionaryScrollView.getWindowToken(), InputMethodManager.HIDE_NOT_ALWAYS);
+                .hideSoftInputFromWindow(dictionaryContentLayout.getWindowToken(), InputMethodManager.HIDE_NOT_ALWAYS);
         searchTextView.clearFocus();
+        suggestionPopup.dismiss();
     }
 
     private void makeSnackBar(String message) {
@@ -416,26 +501,28 @@ public final class MainActivity extends AppCompatActivity
             return;
         }
 
-        String text = DictionarySearch.removeBothEndSymbol(resultText);
+        String text = TokenNormalizer.trim(resultText);
         if (text != null && dictionary != null) {
             searchTextView.setText(text);
-            DictionaryData dictData = dictionary.search(text);
-            if (dictData != null && (linkHistory.size() == 0 ||
-                    !dictData.wordText().equals(linkHistory.getFirst().wordText()))) {
-                setDictionaryText(dictData);
-
-                dictionaryBackButton.setVisibility(View.GONE);
-                ttsButton.setVisibility(View.VISIBLE);
-                headTextView.setVisibility(View.VISIBLE);
-                linkHistory.clear();
-                linkHistory.add(dictData);
-            }
+            dictionary.search(LookupExecutor.Slot.ENTRY, text,
+                    new LookupExecutor.Callback<DictionaryData>() {
+                        @Override
+                        public void onResult(DictionaryData dictData) {
+                            if (isCameraPaused || dictionaryExpanded) return;
+                            if (dictData != null && (linkHistory.size() == 0 ||
+                                    !dictData.wordText().equals(linkHistory.getFirst().wordText()))) {
+                                showSearchResult(dictData);
+                            }
+                        }
+                    });
         }
     }
 
     @Override
     public void onAutoFocus(boolean success) {
         if (success) {
+            // The area may look unchanged at low resolution even though it was blurred before.
+            textRecognition.resetChangeDetection();
             cameraCursor.setAreaGraphics(
                     true, CameraCursorGraphic.AREA_FOCUS_SUCCESS_COLOR);
         }
@@ -447,6 +534,19 @@ public final class MainActivity extends AppCompatActivity
         }, 500L);
     }
 
+    @Override
+    public void onInstallProgress(long installedBytes, long totalBytes) {
+        if (!linkHistory.isEmpty() || totalBytes <= 0) return;
+        int percent = (int) (installedBytes * 100 / totalBytes);
+        senseAdapter.setText(getString(R.string.dictionary_installing, percent));
+    }
+
+    @Override
+    public void onIndexProgress(int indexedRows, int totalRows) {
+        reverseIndexPercent = totalRows > 0 ? (int) (indexedRows * 100L / totalRows) : 100;
+        updateSearchHint();
+    }
+
     @Override
     public void onInit(int status) {
         if (status == TextToSpeech.SUCCESS) {
@@ -476,29 +576,82 @@ public final class MainActivity extends AppCompatActivity
     }
 
     @Override
-    public void afterTextChanged(final Editable s) {
+    public void afterTextChanged(Editable s) {
         if (!dictionaryExpanded || s == null) return;
         final String text = s.toString();
+        if (text.equals(editingText)) return;
         editingText = text;
 
-        new Handler().postDelayed(new Runnable() {
+        searchHandler.removeCallbacks(searchTask);
+        if (text.length() == 0) {
+            dictionary.cancel(LookupExecutor.Slot.SUGGEST);
+            suggestionPopup.dismiss();
+            return;
+        }
+
+        if (reverseSearch) {
+            dictionary.searchReverse(text, MAX_REVERSE_RESULTS,
+                    new LookupExecutor.Callback<List<DictionaryData>>() {
+                        @Override
+                        public void onResult(List<DictionaryData> results) {
+                            if (!text.equals(editingText)) return;
+                            List<String> labels = new ArrayList<>(results.size());
+                            List<String> words = new ArrayList<>(results.size());
+                            for (DictionaryData result : results) {
+                                labels.add(result.wordText() + "  " + result.meanText());
+                                words.add(result.wordText());
+                            }
+                            showSuggestions(labels, words);
+                        }
+                    });
+            return;
+        }
+
+        dictionary.suggest(text, MAX_SUGGESTIONS, new LookupExecutor.Callback<List<String>>() {
             @Override
-            public void run() {
-                if (!text.equals(editingText)) return;
-
-                if (text.length() > 0) {
-                    DictionaryData dictData = dictionary.search(text);
-                    if (dictData != null) {
-                        setDictionaryText(dictData);
-                        dictionaryBackButton.setVisibility(View.GONE);
-                        ttsButton.setVisibility(View.VISIBLE);
-                        headTextView.setVisibility(View.VISIBLE);
-                        linkHistory.clear();
-                        linkHistory.add(dictData);
-                    }
-                }
+            public void onResult(List<String> suggestions) {
+                if (text.equals(editingText)) showSuggestions(suggestions, suggestions);
             }
-        }, 400L);
+        });
+        searchHandler.postDelayed(searchTask, 400L);
+    }
+
+    private void showSuggestions(List<String> labels, List<String> words) {
+        suggestionAdapter.clear();
+        suggestionAdapter.addAll(labels);
+        suggestionWords.clear();
+        suggestionWords.addAll(words);
+        if (labels.isEmpty() || !searchTextView.hasFocus()) suggestionPopup.dismiss();
+        else suggestionPopup.show();
+    }
+
+    private void setReverseSearch(boolean enabled) {
+        reverseSearch = enabled;
+        updateSearchHint();
+        editingText = null;
+        searchHandler.removeCallbacks(searchTask);
+        dictionary.cancel(LookupExecutor.Slot.SUGGEST);
+        suggestionPopup.dismiss();
+        if (!dictionaryExpanded) expandDictionaryLayout(true);
+        searchTextView.requestFocus();
+        afterTextChanged(searchTextView.getText());
+    }
+
+    private void updateSearchHint() {
+        if (!reverseSearch) searchTextView.setHint(null);
+        else if (reverseIndexPercent < 100)
+            searchTextView.setHint(getString(R.string.reverse_index_building, reverseIndexPercent));
+        else searchTextView.setHint(R.string.reverse_search_hint);
+    }
+
+    private void selectSuggestion(String word) {
+        editingText = word;
+        searchHandler.removeCallbacks(searchTask);
+        dictionary.cancel(LookupExecutor.Slot.SUGGEST);
+        suggestionPopup.dismiss();
+        searchTextView.setText(word);
+        searchTextView.setSelection(word.length());
+        searchTask.run();
     }
 
     @Override
@@ -556,6 +709,10 @@ public final class MainActivity extends AppCompatActivity
         @Override
         public boolean onMenuItemClick(MenuItem item) {
             switch (item.getItemId()) {
+                case R.id.menu_reverse_search:
+                    item.setChecked(!item.isChecked());
+                    setReverseSearch(item.isChecked());
+                    break;
                 case R.id.menu_settings:
                     Intent settingsIntent = new Intent(MainActivity.this, SettingsActivity.class);
                     startActivity(settingsIntent);
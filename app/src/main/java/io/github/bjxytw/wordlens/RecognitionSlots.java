@@ -0,0 +1,90 @@
+package io.github.bjxytw.wordlens;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class RecognitionSlots {
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong busy = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile int limit;
+
+    // Only touched from the thread that completes recognitions.
+    private long newestSequence = -1;
+    private long completed;
+    private long totalLatencyNanos;
+
+    RecognitionSlots(int limit) {
+        setLimit(limit);
+    }
+
+    void setLimit(int limit) {
+        this.limit = Math.max(1, limit);
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            int count = inFlight.get();
+            if (count >= limit) {
+                busy.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(count, count + 1)) {
+                submitted.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    // Frees the slot of a finished recognition and returns whether its result is still worth
+    // delivering, that is, whether no newer frame has been delivered yet.
+    boolean release(long sequence, long timestamp, boolean success, long nowNanos) {
+        inFlight.decrementAndGet();
+        if (!success) failed.incrementAndGet();
+        if (sequence <= newestSequence) {
+            stale.incrementAndGet();
+            return false;
+        }
+        newestSequence = sequence;
+        completed++;
+        totalLatencyNanos += nowNanos - timestamp;
+        return true;
+    }
+
+    // Frees the slot of a recognition that failed before it was started. Unlike release, this
+    // is safe to call from the thread that acquired the slot.
+    void abandon() {
+        inFlight.decrementAndGet();
+        failed.incrementAndGet();
+    }
+
+    int inFlightCount() {
+        return inFlight.get();
+    }
+
+    long submittedCount() {
+        return submitted.get();
+    }
+
+    long failedCount() {
+        return failed.get();
+    }
+
+    long staleCount() {
+        return stale.get();
+    }
+
+    long busyCount() {
+        return busy.get();
+    }
+
+    String stats() {
+        return String.format(Locale.US,
+                "Recognitions submitted=%d, busy=%d, stale=%d, failed=%d, average latency=%d ms",
+                submitted.get(), busy.get(), stale.get(), failed.get(),
+                completed == 0 ? 0 : totalLatencyNanos / completed / 1000000);
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.bjxytw.wordlens;
+
+import android.text.method.LinkMovementMethod;
+import android.util.LruCache;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Arrays;
+
+public class SenseAdapter extends RecyclerView.Adapter<SenseAdapter.SenseViewHolder> {
+    private static final int ROW_CACHE_SIZE = 64;
+    private final LruCache<Integer, PrecomputedTextCompat> rowCache = new LruCache<>(ROW_CACHE_SIZE);
+    private PrecomputedTextCompat.Params rowParams;
+    private CharSequence text = "";
+    private int[] rowStarts = new int[16];
+    private int rowCount;
+    private int textLength;
+
+    static class SenseViewHolder extends RecyclerView.ViewHolder {
+        private final TextView senseTextView;
+
+        SenseViewHolder(TextView senseTextView) {
+            super(senseTextView);
+            this.senseTextView = senseTextView;
+        }
+    }
+
+    public void setText(CharSequence text) {
+        this.text = text;
+        rowCache.evictAll();
+
+        textLength = text.length();
+        while (textLength > 0 && text.charAt(textLength - 1) == '\n') textLength--;
+        rowCount = 0;
+        if (textLength > 0) {
+            rowStarts[rowCount++] = 0;
+            for (int i = 0; i < textLength; i++) {
+                if (text.charAt(i) != '\n') continue;
+                if (rowCount == rowStarts.length) rowStarts = Arrays.copyOf(rowStarts, rowCount * 2);
+                rowStarts[rowCount++] = i + 1;
+            }
+        }
+        notifyDataSetChanged();
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    public int rowStart(int row) {
+        return rowStarts[row];
+    }
+
+    public int rowEnd(int row) {
+        return row + 1 < rowCount ? rowStarts[row + 1] - 1 : textLength;
+    }
+
+    public int rowForOffset(int offset) {
+        int row = Arrays.binarySearch(rowStarts, 0, rowCount, offset);
+        return row >= 0 ? row : Math.max(-row - 2, 0);
+    }
+
+    public void invalidateRange(int start, int end) {
+        if (rowCount == 0) return;
+        int firstRow = rowForOffset(start);
+        int lastRow = rowForOffset(Math.max(end - 1, start));
+        for (int row = firstRow; row <= lastRow; row++) rowCache.remove(row);
+        notifyItemRangeChanged(firstRow, lastRow - firstRow + 1);
+    }
+
+    @NonNull
+    @Override
+    public SenseViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        TextView senseTextView = (TextView) LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_sense, parent, false);
+        senseTextView.setMovementMethod(LinkMovementMethod.getInstance());
+        return new SenseViewHolder(senseTextView);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull SenseViewHolder holder, int position) {
+        // Rows keep their measured text, so a row scrolled back into view is not measured again.
+        // Every row uses the same layout, so the params only change with the configuration.
+        PrecomputedTextCompat.Params params = TextViewCompat.getTextMetricsParams(holder.senseTextView);
+        if (!params.equals(rowParams)) {
+            rowCache.evictAll();
+            rowParams = params;
+        }
+        PrecomputedTextCompat row = rowCache.get(position);
+        if (row == null) {
+            row = PrecomputedTextCompat.create(
+                    text.subSequence(rowStart(position), rowEnd(position)), params);
+            rowCache.put(position, row);
+        }
+        TextViewCompat.setPrecomputedText(holder.senseTextView, row);
+    }
+
+    @Override
+    public int getItemCount() {
+        return rowCount;
+    }
+}
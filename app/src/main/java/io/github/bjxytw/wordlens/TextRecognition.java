@@ -15,19 +15,26 @@ import com.google.firebase.ml.vision.text.FirebaseVisionTextRecognizer;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 
 import io.github.bjxytw.wordlens.camera.CameraCursorGraphic;
 import io.github.bjxytw.wordlens.camera.CameraSource;
 import io.github.bjxytw.wordlens.data.ImageData;
+import io.github.bjxytw.wordlens.db.PhraseMatcher;
 
 public class TextRecognition {
     private static final String TAG = "TextRecognition";
+    private static final int DEFAULT_MAX_IN_FLIGHT = 2;
+    private static final float DEFAULT_CHANGE_THRESHOLD = 6.0f;
     private final FirebaseVisionTextRecognizer detector;
     private final CameraCursorGraphic cursor;
     private TextRecognitionListener listener;
-    private ImageData processingData;
+    private final RecognitionSlots slots = new RecognitionSlots(DEFAULT_MAX_IN_FLIGHT);
+    private final FrameCropper cropper = new FrameCropper();
+    private final FrameChangeDetector changeDetector = new FrameChangeDetector(DEFAULT_CHANGE_THRESHOLD);
+    private PhraseMatcher phraseMatcher;
+    private final List<String> lineTexts = new ArrayList<>();
 
     public interface TextRecognitionListener {
         void onRecognitionResult(String result);
@@ -39,14 +46,65 @@ public class TextRecognition {
         this.listener = listener;
     }
 
-    public void process(ImageData data) {
-        if (data != null && processingData == null) {
-            processingData = data;
-            detectImage(processingData);
+    // Starts recognizing the frame unless it shows the same as the last recognized one, whose
+    // result is still on screen, or the limit of recognitions in flight is reached.
+    // Returns whether the frame was taken.
+    public boolean process(ImageData data) {
+        if (data == null || !hasAreaChanged(data) || !slots.tryAcquire()) return false;
+        changeDetector.accept();
+        FrameCropper.Crop crop = null;
+        try {
+            crop = cropRecognitionArea(data);
+            if (crop == null) {
+                changeDetector.reset();
+                slots.abandon();
+                return false;
+            }
+            detectImage(data, crop);
+        } catch (RuntimeException e) {
+            cropper.recycle(crop);
+            changeDetector.reset();
+            slots.abandon();
+            throw e;
         }
+        return true;
+    }
+
+    public void setMaxInFlight(int count) {
+        slots.setLimit(count);
+    }
+
+    public long getSubmittedCount() {
+        return slots.submittedCount();
+    }
+
+    public long getBusyCount() {
+        return slots.busyCount();
+    }
+
+    public long getStaleCount() {
+        return slots.staleCount();
+    }
+
+    public long getFailedCount() {
+        return slots.failedCount();
+    }
+
+    public void setChangeThreshold(float threshold) {
+        changeDetector.setThreshold(threshold);
+    }
+
+    public void resetChangeDetection() {
+        changeDetector.reset();
+    }
+
+    public void setPhraseMatcher(PhraseMatcher phraseMatcher) {
+        this.phraseMatcher = phraseMatcher;
     }
 
     public void stop() {
+        Log.i(TAG, slots.stats());
+        Log.i(TAG, changeDetector.stats());
         try {
             detector.close();
         } catch (IOException e) {
@@ -54,34 +112,60 @@ public class TextRecognition {
         }
     }
 
-    private void detectImage(final ImageData imageData) {
+    private boolean hasAreaChanged(ImageData data) {
+        int width = data.getWidth();
+        int height = data.getHeight();
+        Rect area = cursor.getCameraRecognitionRect();
+        if (area == null) return changeDetector.hasChanged(data.getData().array(), width, height,
+                0, 0, width, height);
+        return changeDetector.hasChanged(data.getData().array(), width, height,
+                area.left, area.top, area.right, area.bottom);
+    }
+
+    // The crop owns its pixels, so the camera can reuse the frame buffer as soon as this returns.
+    private FrameCropper.Crop cropRecognitionArea(ImageData data) {
+        int width = data.getWidth();
+        int height = data.getHeight();
+        Rect area = cursor.getCameraRecognitionRect();
+        if (area == null) return cropper.crop(data.getData().array(), width, height, 0, 0, width, height);
+        return cropper.crop(data.getData().array(), width, height,
+                area.left, area.top, area.right, area.bottom);
+    }
+
+    private void detectImage(final ImageData imageData, final FrameCropper.Crop crop) {
         FirebaseVisionImageMetadata metadata =
                 new FirebaseVisionImageMetadata.Builder()
                         .setFormat(FirebaseVisionImageMetadata.IMAGE_FORMAT_NV21)
-                        .setWidth(imageData.getWidth())
-                        .setHeight(imageData.getHeight())
+                        .setWidth(crop.width)
+                        .setHeight(crop.height)
                         .setRotation(CameraSource.ROTATION)
                         .build();
 
-        final ByteBuffer data = fillImageMargin(imageData);
-        detector.processImage(FirebaseVisionImage.fromByteBuffer(data, metadata))
+        detector.processImage(FirebaseVisionImage.fromByteBuffer(ByteBuffer.wrap(crop.data), metadata))
                 .addOnSuccessListener(new OnSuccessListener<FirebaseVisionText>() {
                     @Override
                     public void onSuccess(FirebaseVisionText results) {
-                        processResult(results);
+                        if (slots.release(imageData.getSequence(), imageData.getTimestamp(),
+                                true, System.nanoTime())) processResult(results, crop);
+                        cropper.recycle(crop);
                     }
                 })
                 .addOnFailureListener(new OnFailureListener() {
                     @Override
                     public void onFailure(@NonNull Exception e) {
                         Log.e(TAG, "Text detection failed.", e);
-                        listener.onRecognitionResult(null);
+                        changeDetector.reset();
+                        if (slots.release(imageData.getSequence(), imageData.getTimestamp(),
+                                false, System.nanoTime())) listener.onRecognitionResult(null);
+                        cropper.recycle(crop);
                     }
                 });
     }
 
-    private void processResult(FirebaseVisionText results) {
+    private void processResult(FirebaseVisionText results, FrameCropper.Crop crop) {
         FirebaseVisionText.Element detectedElement = null;
+        List<FirebaseVisionText.Element> detectedLine = null;
+        int detectedIndex = -1;
         List<FirebaseVisionText.TextBlock> blocks = results.getTextBlocks();
         for (int i = 0; i < blocks.size(); i++) {
             List<FirebaseVisionText.Line> lines = blocks.get(i).getLines();
@@ -89,64 +173,36 @@ public class TextRecognition {
                 List<FirebaseVisionText.Element> elements = lines.get(j).getElements();
                 for (int k = 0; k < elements.size(); k++) {
                     FirebaseVisionText.Element element = elements.get(k);
-                    if (isCursorOnBox(cursor.getCameraCursorRect(), element.getBoundingBox()))
+                    if (isCursorOnBox(cursor.getCameraCursorRect(), crop, element.getBoundingBox())) {
                         detectedElement = element;
+                        detectedLine = elements;
+                        detectedIndex = k;
+                    }
                 }
             }
         }
 
         if (detectedElement != null) {
             cursor.setCursorRecognizing(true);
-            listener.onRecognitionResult(detectedElement.getText());
+            String expression = findExpression(detectedLine, detectedIndex);
+            listener.onRecognitionResult(expression != null ? expression : detectedElement.getText());
         } else cursor.setCursorRecognizing(false);
         cursor.postInvalidate();
-
-        processingData = null;
-    }
-
-    private ByteBuffer fillImageMargin(ImageData data) {
-        ByteBuffer buffer = data.getData();
-        byte[] array = buffer.array();
-
-        int width = data.getWidth();
-        int height = data.getHeight();
-        int size = width * height;
-        byte initValue = (byte) 0;
-
-        Rect area = cursor.getCameraRecognitionRect();
-        if (area != null) {
-            Arrays.fill(array, 0, area.top * width, initValue);
-            Arrays.fill(array, width * area.bottom,
-                    size + half(area.top * width), initValue);
-            Arrays.fill(array, size + half(width * area.bottom),
-                    array.length, initValue);
-
-            for (int i = area.top; i < area.bottom; i++) {
-                int offset = i * width;
-                Arrays.fill(array, offset, offset + area.left, initValue);
-                Arrays.fill(array, offset + area.right,
-                        offset + width, initValue);
-            }
-
-            for (int i = half(area.top); i < half(area.bottom); i++) {
-                int offset = i * width + size;
-                Arrays.fill(array, offset, offset + area.left - 1, initValue);
-                Arrays.fill(array, offset + area.right,
-                        offset + width, initValue);
-            }
-        }
-        return buffer;
     }
 
-    private static int half(int size) {
-        return Math.round(size * 0.5f);
+    private String findExpression(List<FirebaseVisionText.Element> elements, int index) {
+        if (phraseMatcher == null || elements.size() < 2) return null;
+        lineTexts.clear();
+        for (FirebaseVisionText.Element element : elements) lineTexts.add(element.getText());
+        return phraseMatcher.findExpression(lineTexts, index);
     }
 
-    private static boolean isCursorOnBox(Rect cursor, Rect box) {
+    private static boolean isCursorOnBox(Rect cursor, FrameCropper.Crop crop, Rect box) {
         if (cursor != null && box != null) {
-            float x = cursor.centerY();
-            float y = cursor.centerX();
-            return x > box.left && y > box.top && x < box.right && y < box.bottom;
+            float x = cursor.centerX();
+            float y = cursor.centerY();
+            return x > crop.cameraLeft(box.top) && y > crop.cameraTop(box.right)
+                    && x < crop.cameraRight(box.bottom) && y < crop.cameraBottom(box.left);
         }
         return false;
     }
@@ -16,9 +16,7 @@ import com.google.firebase.ml.vision.common.FirebaseVisionImageMetadata;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 
 import io.github.bjxytw.wordlens.TextRecognition;
 import io.github.bjxytw.wordlens.data.ImageData;
@@ -32,21 +30,25 @@ public class CameraSource {
     private static final float REQUESTED_FPS = 10.0f;
     private static final int REQUESTED_PREVIEW_WIDTH = 640;
     private static final int REQUESTED_PREVIEW_HEIGHT = 480;
+    private static final int DEFAULT_PREVIEW_BUFFERS = 3;
 
     private static final String TAG = "CameraSource";
 
-    private final Map<byte[], ByteBuffer> byteArrayToByteBuffer = new IdentityHashMap<>();
-
     private final ProcessRunnable processRunnable;
-    private final Object processLock = new Object();
+    private final SharpnessGate sharpnessGate = new SharpnessGate();
 
     private Thread processThread;
+    private PreviewBufferPool bufferPool;
     private TextRecognition textRecognition;
     private Camera camera;
     private Size size;
     private AutoFocusFinishedListener autoFocusListener;
     private Integer requestedZoomRatio;
     private int zoomStep;
+    private int previewBufferCount = DEFAULT_PREVIEW_BUFFERS;
+    private long deliveredFrames;
+    private long supersededFrames;
+    private long droppedFrames;
 
     private boolean supportedFocus = false;
     private boolean supportedFlash = false;
@@ -99,15 +101,21 @@ public class CameraSource {
             camera.release();
             camera = null;
         }
-        byteArrayToByteBuffer.clear();
+        Log.i(TAG, sharpnessGate.stats());
+        if (bufferPool != null) {
+            Log.i(TAG, bufferPool.stats());
+            deliveredFrames += bufferPool.deliveredCount();
+            supersededFrames += bufferPool.supersededCount();
+            droppedFrames += bufferPool.droppedCount();
+            bufferPool = null;
+        }
     }
 
-    public void release() {
-        synchronized (processLock) {
-            stop();
-            if (textRecognition != null)
-                textRecognition.stop();
-        }
+    // stop() joins the process thread, so no frame is being submitted when the recognizer closes.
+    public synchronized void release() {
+        stop();
+        if (textRecognition != null)
+            textRecognition.stop();
     }
 
     private Camera createCamera() throws IOException {
@@ -167,7 +175,8 @@ public class CameraSource {
         camera.setParameters(parameters);
 
         camera.setPreviewCallbackWithBuffer(new CameraCallback());
-        camera.addCallbackBuffer(createPreviewBuffer(size));
+        bufferPool = createBufferPool(size, maxFps);
+        for (byte[] buffer : bufferPool.arrays()) camera.addCallbackBuffer(buffer);
 
         return camera;
     }
@@ -176,15 +185,18 @@ public class CameraSource {
         if (camera == null || !supportedFocus) return false;
 
         camera.cancelAutoFocus();
+        sharpnessGate.onFocusStarted(System.nanoTime());
         try {
             camera.autoFocus(new Camera.AutoFocusCallback() {
                 @Override
                 public void onAutoFocus(boolean success, Camera camera) {
+                    sharpnessGate.onFocusFinished(success);
                     autoFocusListener.onAutoFocus(success);
                 }
             });
         } catch (RuntimeException e) {
             Log.e(TAG, e.toString());
+            sharpnessGate.onFocusFinished(false);
             return false;
         }
 
@@ -218,7 +230,9 @@ public class CameraSource {
     }
 
     void setCameraFocusArea(Rect rect) {
-        if (!supportedFocus || rect == null) return;
+        if (rect == null) return;
+        sharpnessGate.setArea(rect.left, rect.top, rect.right, rect.bottom);
+        if (!supportedFocus) return;
 
         List<Camera.Area> focusArea = new ArrayList<>();
         focusArea.add(new Camera.Area(
@@ -238,23 +252,36 @@ public class CameraSource {
         requestedZoomRatio = ratio;
     }
 
+    // Takes effect the next time the camera starts.
+    public void setPreviewBufferCount(int count) {
+        previewBufferCount = Math.max(1, count);
+    }
+
+    // The frame counts cover every camera session so far.
+    public synchronized long getDeliveredFrameCount() {
+        return deliveredFrames + (bufferPool != null ? bufferPool.deliveredCount() : 0);
+    }
+
+    public synchronized long getSupersededFrameCount() {
+        return supersededFrames + (bufferPool != null ? bufferPool.supersededCount() : 0);
+    }
+
+    public synchronized long getDroppedFrameCount() {
+        return droppedFrames + (bufferPool != null ? bufferPool.droppedCount() : 0);
+    }
+
     Size getSize() {
         return size;
     }
 
-    private byte[] createPreviewBuffer(Size previewSize) {
+    private PreviewBufferPool createBufferPool(Size previewSize, int maxFps) {
 
         int bitsPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.NV21);
         long sizeInBits = (long) previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
         int bufferSize = (int) Math.ceil(sizeInBits / 8.0d) + 1;
 
-        byte[] byteArray = new byte[bufferSize];
-        ByteBuffer buffer = ByteBuffer.wrap(byteArray);
-        if (!buffer.hasArray() || (buffer.array() != byteArray))
-            throw new IllegalStateException("Failed to create buffer.");
-
-        byteArrayToByteBuffer.put(byteArray, buffer);
-        return byteArray;
+        long frameIntervalNanos = 1000000000L * 1000 / Math.max(maxFps, 1000);
+        return new PreviewBufferPool(bufferSize, previewBufferCount, frameIntervalNanos);
     }
 
     private class CameraCallback implements Camera.PreviewCallback {
@@ -268,12 +295,15 @@ public class CameraSource {
         private final Object lock = new Object();
         private boolean active = true;
         private ByteBuffer processingData;
+        private long processingTime;
+        private long sequence;
 
         ProcessRunnable() {}
 
         @Override
         public void run() {
             ByteBuffer data;
+            long timestamp;
             while (true) {
                 synchronized (lock) {
                     while (active && (processingData == null)) {
@@ -287,16 +317,20 @@ public class CameraSource {
                     if (!active) return;
 
                     data = processingData;
+                    timestamp = processingTime;
                     processingData = null;
                 }
+                int width = size.getWidth();
+                int height = size.getHeight();
                 try {
-                    synchronized (processLock) {
-                        textRecognition.process(new ImageData(data, size.getWidth(), size.getHeight()));
-                    }
+                    if (sharpnessGate.isSharp(data.array(), width, height, System.nanoTime())
+                            && textRecognition.process(
+                                    new ImageData(data, width, height, sequence++, timestamp)))
+                        bufferPool.onDelivered();
                 } catch (Throwable t) {
                     Log.e(TAG, t.toString());
                 } finally {
-                    camera.addCallbackBuffer(data.array());
+                    camera.addCallbackBuffer(bufferPool.recycle(data));
                 }
             }
         }
@@ -304,14 +338,18 @@ public class CameraSource {
         void setNextFrame(byte[] data, Camera camera) {
             synchronized (lock) {
                 if (processingData != null) {
-                    camera.addCallbackBuffer(processingData.array());
+                    camera.addCallbackBuffer(bufferPool.recycle(processingData));
+                    bufferPool.onSuperseded();
                     processingData = null;
                 }
-                if (!byteArrayToByteBuffer.containsKey(data)) {
+                long time = System.nanoTime();
+                ByteBuffer buffer = bufferPool.onFrame(data, time);
+                if (buffer == null) {
                     Log.w(TAG, "Could not find ByteBuffer.");
                     return;
                 }
-                processingData = byteArrayToByteBuffer.get(data);
+                processingData = buffer;
+                processingTime = time;
                 lock.notifyAll();
             }
         }
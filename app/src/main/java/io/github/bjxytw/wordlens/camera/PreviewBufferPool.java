@@ -0,0 +1,87 @@
+package io.github.bjxytw.wordlens.camera;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class PreviewBufferPool {
+    private final Map<byte[], ByteBuffer> buffers = new IdentityHashMap<>();
+    private final AtomicInteger queuedBuffers = new AtomicInteger();
+    private final AtomicLong deliveredFrames = new AtomicLong();
+    private final AtomicLong supersededFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final long frameIntervalNanos;
+
+    // Only touched from the camera callback thread.
+    private long lastFrameTime;
+    private boolean exhausted;
+
+    // The buffers are allocated once and never added or removed, so the map is safe to read
+    // from both the camera callback thread and the process thread.
+    PreviewBufferPool(int bufferSize, int count, long frameIntervalNanos) {
+        for (int i = 0; i < count; i++) {
+            byte[] byteArray = new byte[bufferSize];
+            ByteBuffer buffer = ByteBuffer.wrap(byteArray);
+            if (!buffer.hasArray() || (buffer.array() != byteArray))
+                throw new IllegalStateException("Failed to create buffer.");
+            buffers.put(byteArray, buffer);
+        }
+        this.frameIntervalNanos = frameIntervalNanos;
+    }
+
+    Set<byte[]> arrays() {
+        queuedBuffers.set(buffers.size());
+        return buffers.keySet();
+    }
+
+    // Called for every preview frame. The camera skips frames while all buffers are out of
+    // its queue, so the gap after such a frame tells how many frames were dropped.
+    ByteBuffer onFrame(byte[] data, long timeNanos) {
+        ByteBuffer buffer = buffers.get(data);
+        if (buffer == null) return null;
+
+        int queued = queuedBuffers.decrementAndGet();
+        if (exhausted) {
+            long missed = Math.round((double) (timeNanos - lastFrameTime) / frameIntervalNanos) - 1;
+            if (missed > 0) droppedFrames.addAndGet(missed);
+        }
+        lastFrameTime = timeNanos;
+        exhausted = queued <= 0;
+        return buffer;
+    }
+
+    byte[] recycle(ByteBuffer buffer) {
+        queuedBuffers.incrementAndGet();
+        return buffer.array();
+    }
+
+    void onDelivered() {
+        deliveredFrames.incrementAndGet();
+    }
+
+    void onSuperseded() {
+        supersededFrames.incrementAndGet();
+    }
+
+    long deliveredCount() {
+        return deliveredFrames.get();
+    }
+
+    long supersededCount() {
+        return supersededFrames.get();
+    }
+
+    long droppedCount() {
+        return droppedFrames.get();
+    }
+
+    String stats() {
+        return String.format(Locale.US,
+                "Preview buffers=%d, frames delivered=%d, superseded=%d, dropped=%d",
+                buffers.size(), deliveredFrames.get(), supersededFrames.get(), droppedFrames.get());
+    }
+}
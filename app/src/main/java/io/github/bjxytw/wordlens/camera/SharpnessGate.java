@@ -0,0 +1,94 @@
+package io.github.bjxytw.wordlens.camera;
+
+import java.util.Locale;
+
+final class SharpnessGate {
+    private static final int SAMPLE_STEP = 2;
+    private static final float MIN_SHARPNESS = 25.0f;
+    private static final float RELATIVE_THRESHOLD = 0.5f;
+    private static final float REFERENCE_DECAY = 0.9f;
+    private static final long FOCUS_TIMEOUT_NANOS = 2000000000L;
+
+    private volatile int[] area;
+    private volatile long focusStartTime;
+    private volatile boolean focusing;
+    private volatile boolean refocused;
+
+    // Only touched from the process thread.
+    private float reference;
+    private long checked;
+    private long blurred;
+    private long focusSkipped;
+
+    void setArea(int left, int top, int right, int bottom) {
+        area = new int[]{left, top, right, bottom};
+    }
+
+    void onFocusStarted(long nowNanos) {
+        focusStartTime = nowNanos;
+        focusing = true;
+    }
+
+    void onFocusFinished(boolean success) {
+        refocused = success;
+        focusing = false;
+    }
+
+    // Frames taken during a focus sweep are dropped. Otherwise a frame passes when its
+    // sharpness reaches half of the recent peak, which decays every frame so the gate follows
+    // a scene with less texture. The first frame after focus succeeds sets a new peak.
+    boolean isSharp(byte[] frame, int frameWidth, int frameHeight, long nowNanos) {
+        checked++;
+        if (focusing && nowNanos - focusStartTime < FOCUS_TIMEOUT_NANOS) {
+            focusSkipped++;
+            return false;
+        }
+        int[] bounds = area;
+        if (bounds == null) return true;
+
+        float score = sharpness(frame, frameWidth, frameHeight,
+                bounds[0], bounds[1], bounds[2], bounds[3]);
+        if (refocused) {
+            refocused = false;
+            reference = score;
+            return true;
+        }
+        reference = Math.max(score, reference * REFERENCE_DECAY);
+        if (score >= Math.max(MIN_SHARPNESS, reference * RELATIVE_THRESHOLD)) return true;
+        blurred++;
+        return false;
+    }
+
+    // The variance of a 4-neighbour Laplacian of the Y plane, taken on every other pixel.
+    static float sharpness(byte[] frame, int frameWidth, int frameHeight,
+                           int left, int top, int right, int bottom) {
+        left = Math.max(1, left);
+        top = Math.max(1, top);
+        right = Math.min(frameWidth - 1, right);
+        bottom = Math.min(frameHeight - 1, bottom);
+
+        long sum = 0;
+        long squareSum = 0;
+        int count = 0;
+        for (int y = top; y < bottom; y += SAMPLE_STEP) {
+            int offset = y * frameWidth;
+            for (int x = left; x < right; x += SAMPLE_STEP) {
+                int center = offset + x;
+                int laplacian = 4 * (frame[center] & 0xff) - (frame[center - 1] & 0xff)
+                        - (frame[center + 1] & 0xff) - (frame[center - frameWidth] & 0xff)
+                        - (frame[center + frameWidth] & 0xff);
+                sum += laplacian;
+                squareSum += laplacian * laplacian;
+                count++;
+            }
+        }
+        if (count == 0) return 0;
+        float mean = (float) sum / count;
+        return (float) squareSum / count - mean * mean;
+    }
+
+    String stats() {
+        return String.format(Locale.US, "Sharpness checked=%d, blurred=%d, focusing=%d",
+                checked, blurred, focusSkipped);
+    }
+}
@@ -1,11 +1,19 @@
 package io.github.bjxytw.wordlens.data;
 
+import java.util.List;
+
 public class DictionaryData {
     private final String word, mean;
+    private final List<LinkTextData> links;
 
     public DictionaryData(String word, String mean) {
+        this(word, mean, null);
+    }
+
+    public DictionaryData(String word, String mean, List<LinkTextData> links) {
         this.word = word;
         this.mean = mean;
+        this.links = links;
     }
 
     public String wordText() {
@@ -15,4 +23,8 @@ public class DictionaryData {
     public String meanText() {
         return mean;
     }
+
+    public List<LinkTextData> links() {
+        return links;
+    }
 }
@@ -5,11 +5,15 @@ import java.nio.ByteBuffer;
 public class ImageData {
     private final ByteBuffer data;
     private final int width, height;
+    private final long sequence;
+    private final long timestamp;
 
-    public ImageData(ByteBuffer data, int width, int height) {
+    public ImageData(ByteBuffer data, int width, int height, long sequence, long timestamp) {
         this.data = data;
         this.width = width;
         this.height = height;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
     }
 
     public ByteBuffer getData() {
@@ -23,4 +27,12 @@ public class ImageData {
     public int getHeight() {
         return height;
     }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
 }
@@ -1,13 +1,20 @@
 package io.github.bjxytw.wordlens.data;
 
 public class LinkTextData {
+    public static final long NO_ROW = -1;
     private int start, end;
     private String text;
+    private long row;
 
     public LinkTextData(int start, int second, String text) {
+        this(start, second, text, NO_ROW);
+    }
+
+    public LinkTextData(int start, int second, String text, long row) {
         this.start = start;
         this.end = second;
         this.text = text;
+        this.row = row;
     }
 
     public int getStart() {
@@ -21,4 +28,8 @@ public class LinkTextData {
     public String getText() {
         return text;
     }
+
+    public long getRow() {
+        return row;
+    }
 }
@@ -1,61 +1,457 @@
 package io.github.bjxytw.wordlens.db;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "DBHelper";
     private static final String DB_SOURCE_NAME = "ejdict.sqlite3";
+    private static final String DB_COMPRESSED_SOURCE_NAME = "ejdict.sqlite3.gz";
+    private static final String IRREGULAR_FORMS_NAME = "irregular_forms.txt";
     private static final String DB_NAME = "dictionary.db";
-    private static final int DB_VERSION = 1;
-    private static final int COPY_BUFFER_SIZE = 1024;
+    private static final String FILTER_NAME = "dictionary.filter";
+    private static final String INDEX_NAME = "dictionary.index";
+    private static final String DEFINITIONS_NAME = "dictionary.defs";
+    private static final String REVERSE_INDEX_NAME = "dictionary.fts";
+    private static final String STAMP_NAME = "dictionary.stamp";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int DB_VERSION = 3;
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+    private static final byte[] SQLITE_HEADER = "SQLite format 3\u0000".getBytes(Charset.forName("US-ASCII"));
+    private static final long MMAP_SIZE = 64L * 1024 * 1024;
+    private static final int CACHE_SIZE_KB = 4 * 1024;
+
+    static final String TABLE_ITEMS = "items";
+    static final String WORD_KEY_COL = "word_key";
+    static final String INDEX_WORD_KEY = "items_word_key";
+    static final String TABLE_INFLECTIONS = "inflections";
+
     private Context context;
     private File databasePath;
+    private File filterPath;
+    private File indexPath;
+    private File definitionsPath;
+    private File reverseIndexPath;
+    private File stampPath;
+    private InstallListener installListener;
+    private long sourceBytesRead;
+
+    public interface InstallListener {
+        void onInstallProgress(long installedBytes, long totalBytes);
+    }
 
     DatabaseHelper(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
         this.context = context;
         databasePath = context.getDatabasePath(DB_NAME);
+        filterPath = new File(databasePath.getParentFile(), FILTER_NAME);
+        indexPath = new File(databasePath.getParentFile(), INDEX_NAME);
+        definitionsPath = new File(databasePath.getParentFile(), DEFINITIONS_NAME);
+        reverseIndexPath = new File(databasePath.getParentFile(), REVERSE_INDEX_NAME);
+        stampPath = new File(databasePath.getParentFile(), STAMP_NAME);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    void setInstallListener(InstallListener listener) {
+        installListener = listener;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        createSearchIndex(db);
+        createInflectionIndex(db, loadIrregularForms(context));
     }
 
     @Override
-    public void onCreate(SQLiteDatabase db) {}
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) createSearchIndex(db);
+        if (oldVersion < 3) createInflectionIndex(db, loadIrregularForms(context));
+        deleteDerivedFiles();
+    }
 
     @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {}
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        executePragma(db, "PRAGMA mmap_size=" + MMAP_SIZE);
+        executePragma(db, "PRAGMA cache_size=-" + CACHE_SIZE_KB);
+        executePragma(db, "PRAGMA temp_store=MEMORY");
+        executePragma(db, "PRAGMA query_only=1");
+    }
 
     @Override
     public SQLiteDatabase getReadableDatabase() {
-        if (databasePath.exists()) {
+        if (isInstalled()) {
             Log.i(TAG, "Database exists.");
-            return super.getReadableDatabase();
         } else {
             try {
-                return copyFromAssets();
+                installFromAssets();
             } catch (IOException e) {
-                Log.e(TAG, "Database copy failed.", e);
+                Log.e(TAG, "Database install failed.", e);
                 return null;
             }
         }
+
+        try {
+            SQLiteDatabase db = super.getReadableDatabase();
+            if (!isStampCurrent()) writeStamp(databasePath.length());
+            return db;
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Database open failed.", e);
+            deleteDatabase();
+            return null;
+        }
+    }
+
+    File getFilterPath() {
+        return filterPath;
+    }
+
+    File getIndexPath() {
+        return indexPath;
+    }
+
+    File getDefinitionsPath() {
+        return definitionsPath;
+    }
+
+    File getReverseIndexPath() {
+        return reverseIndexPath;
+    }
+
+    File getDatabaseFile() {
+        return databasePath;
+    }
+
+    private void deleteDerivedFiles() {
+        if (filterPath.exists() && !filterPath.delete())
+            Log.w(TAG, "Could not delete headword filter.");
+        if (indexPath.exists() && !indexPath.delete())
+            Log.w(TAG, "Could not delete headword index.");
+        if (definitionsPath.exists() && !definitionsPath.delete())
+            Log.w(TAG, "Could not delete definition store.");
+        if (reverseIndexPath.exists() && !SQLiteDatabase.deleteDatabase(reverseIndexPath))
+            Log.w(TAG, "Could not delete reverse index.");
+    }
+
+    private boolean isInstalled() {
+        if (!databasePath.exists()) return false;
+        if (isStampCurrent()) return true;
+
+        Log.i(TAG, "Verifying database without a current install stamp.");
+        if (checkIntegrity(databasePath)) return true;
+        deleteDatabase();
+        return false;
+    }
+
+    private void installFromAssets() throws IOException {
+        deleteDatabase();
+        File parent = databasePath.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs())
+            throw new IOException("Could not create " + parent);
+
+        File tempFile = new File(databasePath.getPath() + TEMP_SUFFIX);
+        long startTime = SystemClock.elapsedRealtime();
+        long size;
+        try {
+            size = hasAsset(DB_COMPRESSED_SOURCE_NAME)
+                    ? copyCompressedAsset(tempFile) : copyAsset(tempFile);
+            verifyCopy(tempFile, size);
+        } catch (IOException e) {
+            if (tempFile.exists() && !tempFile.delete())
+                Log.w(TAG, "Could not delete " + tempFile);
+            throw e;
+        }
+
+        if (!tempFile.renameTo(databasePath))
+            throw new IOException("Could not rename " + tempFile);
+        writeStamp(size);
+        Log.i(TAG, "Copied database from assets: " + sourceBytesRead + " bytes read, "
+                + size + " bytes written in " + (SystemClock.elapsedRealtime() - startTime) + " ms.");
+    }
+
+    private boolean hasAsset(String name) {
+        try {
+            String[] assets = context.getAssets().list("");
+            return assets != null && Arrays.asList(assets).contains(name);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private long copyCompressedAsset(File target) throws IOException {
+        return copyCompressed(context.getAssets().open(DB_COMPRESSED_SOURCE_NAME),
+                assetLength(DB_COMPRESSED_SOURCE_NAME), target);
+    }
+
+    // Returns the bytes written; sourceBytesRead holds the compressed bytes read.
+    long copyCompressed(InputStream compressed, long total, File target) throws IOException {
+        try (CountingInputStream source = new CountingInputStream(compressed);
+             InputStream input = new GZIPInputStream(source, COPY_BUFFER_SIZE);
+             FileOutputStream output = new FileOutputStream(target)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long position = 0;
+            int size;
+            while ((size = input.read(buffer)) > 0) {
+                output.write(buffer, 0, size);
+                position += size;
+                notifyProgress(source.getCount(), Math.max(total, source.getCount()));
+            }
+            output.getFD().sync();
+            sourceBytesRead = source.getCount();
+            return position;
+        }
+    }
+
+    private long assetLength(String name) {
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(name)) {
+            return descriptor.getLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private long copyAsset(File target) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = context.getAssets().openFd(DB_SOURCE_NAME);
+        } catch (IOException e) {
+            Log.i(TAG, "Asset is compressed, copying as stream.");
+            return copyAssetStream(target);
+        }
+
+        try (AssetFileDescriptor source = descriptor;
+             FileInputStream input = source.createInputStream()) {
+            return transfer(input, source.getStartOffset(), source.getLength(), target);
+        }
+    }
+
+    long transfer(FileInputStream input, long start, long total, File target) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(target)) {
+            FileChannel inputChannel = input.getChannel();
+            FileChannel outputChannel = output.getChannel();
+            long position = 0;
+            while (position < total) {
+                long count = inputChannel.transferTo(start + position,
+                        Math.min(TRANSFER_CHUNK_SIZE, total - position), outputChannel);
+                if (count <= 0) throw new IOException("Asset transfer stalled.");
+                position += count;
+                notifyProgress(position, total);
+            }
+            output.getFD().sync();
+            sourceBytesRead = total;
+            return total;
+        }
     }
 
-    private SQLiteDatabase copyFromAssets() throws IOException{
+    private long copyAssetStream(File target) throws IOException {
         try (InputStream input = context.getAssets().open(DB_SOURCE_NAME);
-             OutputStream output = new FileOutputStream(databasePath)) {
+             FileOutputStream output = new FileOutputStream(target)) {
+            long total = input.available();
             byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long position = 0;
             int size;
-            while ((size = input.read(buffer)) > 0)
+            while ((size = input.read(buffer)) > 0) {
                 output.write(buffer, 0, size);
-            Log.i(TAG, "Copied database from assets.");
+                position += size;
+                notifyProgress(position, Math.max(total, position));
+            }
+            output.getFD().sync();
+            sourceBytesRead = position;
+            return position;
+        }
+    }
+
+    long getSourceBytesRead() {
+        return sourceBytesRead;
+    }
+
+    private void notifyProgress(long installedBytes, long totalBytes) {
+        if (installListener != null)
+            installListener.onInstallProgress(installedBytes, totalBytes);
+    }
+
+    static void verifyCopy(File file, long expectedSize) throws IOException {
+        if (file.length() != expectedSize)
+            throw new IOException("Size mismatch: " + file.length() + " != " + expectedSize);
+
+        try (FileInputStream input = new FileInputStream(file)) {
+            ByteBuffer header = ByteBuffer.allocate(SQLITE_HEADER.length);
+            FileChannel channel = input.getChannel();
+            while (header.hasRemaining())
+                if (channel.read(header) < 0) break;
+            if (header.hasRemaining() || !header.equals(ByteBuffer.wrap(SQLITE_HEADER)))
+                throw new IOException("Not an SQLite database.");
+        }
+        if (!checkIntegrity(file)) throw new IOException("Integrity check failed.");
+    }
+
+    private static boolean checkIntegrity(File file) {
+        try {
+            SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                    file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+            try (Cursor cursor = db.rawQuery("PRAGMA quick_check", null)) {
+                return cursor.moveToFirst() && "ok".equalsIgnoreCase(cursor.getString(0));
+            } finally {
+                db.close();
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Integrity check failed.", e);
+            return false;
+        }
+    }
+
+    private boolean isStampCurrent() {
+        if (!stampPath.exists()) return false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(stampPath), Charset.forName("UTF-8")))) {
+            String line = reader.readLine();
+            if (line == null) return false;
+            // The size is the one recorded at install. Delta packs and WAL checkpoints change the
+            // live file, so only the schema version and a readable header are checked here.
+            String[] fields = line.trim().split(" ");
+            return fields.length == 2 && Long.parseLong(fields[0]) >= SQLITE_HEADER.length
+                    && Integer.parseInt(fields[1]) == DB_VERSION
+                    && databasePath.length() >= SQLITE_HEADER.length;
+        } catch (IOException | NumberFormatException e) {
+            Log.w(TAG, "Could not read install stamp.", e);
+            return false;
+        }
+    }
+
+    private void writeStamp(long size) {
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(stampPath), Charset.forName("UTF-8"))) {
+            writer.write(size + " " + DB_VERSION + "\n");
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write install stamp.", e);
+        }
+    }
+
+    private void deleteDatabase() {
+        if (stampPath.exists() && !stampPath.delete())
+            Log.w(TAG, "Could not delete install stamp.");
+        deleteDerivedFiles();
+        if (databasePath.exists()) SQLiteDatabase.deleteDatabase(databasePath);
+    }
+
+    static void createSearchIndex(SQLiteDatabase db) {
+        if (!hasColumn(db, TABLE_ITEMS, WORD_KEY_COL))
+            db.execSQL("ALTER TABLE " + TABLE_ITEMS + " ADD COLUMN " + WORD_KEY_COL + " TEXT");
+        db.execSQL("UPDATE " + TABLE_ITEMS + " SET " + WORD_KEY_COL + "=lower(word)"
+                + " WHERE " + WORD_KEY_COL + " IS NULL");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_WORD_KEY
+                + " ON " + TABLE_ITEMS + "(" + WORD_KEY_COL + ")");
+        db.execSQL("ANALYZE " + TABLE_ITEMS);
+        Log.i(TAG, "Created search index.");
+    }
+
+    static void createInflectionIndex(SQLiteDatabase db, Map<String, String> irregularForms) {
+        List<String> headwords = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT DISTINCT " + WORD_KEY_COL
+                + " FROM " + TABLE_ITEMS, null)) {
+            while (cursor.moveToNext()) headwords.add(cursor.getString(0));
+        }
+        Map<String, String> forms = Inflections.build(headwords, irregularForms);
+
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_INFLECTIONS
+                + "(form TEXT PRIMARY KEY, base TEXT NOT NULL) WITHOUT ROWID");
+        db.execSQL("DELETE FROM " + TABLE_INFLECTIONS);
+        try (SQLiteStatement insert = db.compileStatement(
+                "INSERT OR IGNORE INTO " + TABLE_INFLECTIONS + "(form, base) VALUES(?, ?)")) {
+            for (Map.Entry<String, String> entry : forms.entrySet()) {
+                insert.bindString(1, entry.getKey());
+                insert.bindString(2, entry.getValue());
+                insert.executeInsert();
+            }
+        }
+        Log.i(TAG, "Created inflection index: " + forms.size() + " forms.");
+    }
+
+    static Map<String, String> loadIrregularForms(Context context) {
+        try (InputStream input = context.getAssets().open(IRREGULAR_FORMS_NAME)) {
+            return Inflections.readIrregularForms(input);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not load irregular forms.", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    private static boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        try (Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null)) {
+            int nameIndex = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                if (column.equals(cursor.getString(nameIndex))) return true;
+            }
+        }
+        return false;
+    }
+
+    private static void executePragma(SQLiteDatabase db, String pragma) {
+        try (Cursor cursor = db.rawQuery(pragma, null)) {
+            cursor.moveToFirst();
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not apply " + pragma, e);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream input) {
+            super(input);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) count++;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int size = super.read(buffer, offset, length);
+            if (size > 0) count += size;
+            return size;
+        }
+
+        @Override
+        public long skip(long length) throws IOException {
+            long size = super.skip(length);
+            count += size;
+            return size;
+        }
+
+        long getCount() {
+            return count;
         }
-        return super.getReadableDatabase();
     }
 }
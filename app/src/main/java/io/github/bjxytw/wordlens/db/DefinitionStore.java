@@ -0,0 +1,434 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.github.bjxytw.wordlens.data.LinkTextData;
+
+final class DefinitionStore {
+    private static final String TAG = "DefinitionStore";
+    private static final String SQL_DEFINITIONS = "SELECT rowid, word, mean FROM items ORDER BY rowid";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x574c4453;
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_SIZE = 36;
+    private static final int BLOCK_ENTRIES = 32;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int MIN_FRAGMENT_COUNT = 4;
+    private static final int MIN_FRAGMENT_BYTES = 3;
+    private static final String FRAGMENT_SEPARATORS = "[,\u3001;\uff1b]";
+
+    private final ByteBuffer buffer;
+    private final int entryCount;
+    private final byte[] dictionary;
+    private final int blockTableOffset;
+    private final int rowTableOffset;
+    private final Inflater inflater = new Inflater(true);
+    private byte[] input = new byte[0];
+    private byte[] block = new byte[0];
+    private int currentBlock = -1;
+    private int position;
+    private String word;
+    private String mean;
+    private int linkCount;
+    private int[] linkStarts = new int[16];
+    private int[] linkEnds = new int[16];
+    private long[] linkRows = new long[16];
+
+    private DefinitionStore(ByteBuffer buffer, int entryCount, byte[] dictionary,
+                            int blockTableOffset, int rowTableOffset) {
+        this.buffer = buffer;
+        this.entryCount = entryCount;
+        this.dictionary = dictionary;
+        this.blockTableOffset = blockTableOffset;
+        this.rowTableOffset = rowTableOffset;
+    }
+
+    // Builds the store unless a current one exists. Returns whether it was built.
+    static boolean buildIfStale(File file, SQLiteDatabase database) throws IOException {
+        DefinitionStore store = load(file, DictionaryUpdater.readDataVersion(database));
+        if (store != null) {
+            store.close();
+            return false;
+        }
+        build(database, file);
+        return true;
+    }
+
+    static DefinitionStore load(File file, int dataVersion) {
+        if (!file.exists()) return null;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE
+                    || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                Log.w(TAG, "Invalid definition store.");
+                return null;
+            }
+            if (buffer.getInt(8) != dataVersion) {
+                Log.w(TAG, "Stale definition store.");
+                return null;
+            }
+            int entryCount = buffer.getInt(12);
+            int blockCount = buffer.getInt(16);
+            int dictionaryOffset = buffer.getInt(20);
+            int dictionaryLength = buffer.getInt(24);
+            int blockTableOffset = buffer.getInt(28);
+            int rowTableOffset = buffer.getInt(32);
+            if (dictionaryOffset < HEADER_SIZE || dictionaryLength < 0
+                    || buffer.capacity() < blockTableOffset + (blockCount + 1) * 4L
+                    || buffer.capacity() < rowTableOffset + entryCount * 8L) {
+                Log.w(TAG, "Truncated definition store.");
+                return null;
+            }
+            byte[] dictionary = new byte[dictionaryLength];
+            buffer.position(dictionaryOffset);
+            buffer.get(dictionary);
+            return new DefinitionStore(buffer, entryCount, dictionary,
+                    blockTableOffset, rowTableOffset);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not load definition store.", e);
+            return null;
+        }
+    }
+
+    static void build(SQLiteDatabase database, File file) throws IOException {
+        List<Long> rows = new ArrayList<>();
+        List<String> words = new ArrayList<>();
+        List<String> means = new ArrayList<>();
+        try (Cursor cursor = database.rawQuery(SQL_DEFINITIONS, null)) {
+            while (cursor.moveToNext()) {
+                if (cursor.isNull(1) || cursor.isNull(2)) continue;
+                rows.add(cursor.getLong(0));
+                words.add(cursor.getString(1));
+                means.add(cursor.getString(2));
+            }
+        }
+        write(rows, words, means, DictionaryUpdater.readDataVersion(database), file);
+    }
+
+    static void write(List<Long> rows, List<String> words, List<String> means, int dataVersion,
+                      File file) throws IOException {
+        long startTime = System.currentTimeMillis();
+        byte[] dictionary = trainDictionary(means);
+        int blockCount = (rows.size() + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES;
+        int[] blockOffsets = new int[blockCount + 1];
+        int blocksOffset = HEADER_SIZE + dictionary.length;
+        long rawBytes = 0;
+        long linkCount = 0;
+
+        Map<String, Long> headwordRows = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            String key = DictionarySearch.normalize(words.get(i));
+            if (!headwordRows.containsKey(key)) headwordRows.put(key, rows.get(i));
+        }
+
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        byte[] output = new byte[64 * 1024];
+        try {
+            for (int i = 0; i < blockCount; i++) {
+                entries.reset();
+                int end = Math.min(rows.size(), (i + 1) * BLOCK_ENTRIES);
+                for (int j = i * BLOCK_ENTRIES; j < end; j++) {
+                    String mean = DictionarySearch.formatMean(means.get(j));
+                    writeString(entries, words.get(j));
+                    writeString(entries, mean);
+                    linkCount += writeLinks(entries, mean, words.get(j), headwordRows);
+                }
+                byte[] raw = entries.toByteArray();
+                rawBytes += raw.length;
+
+                blockOffsets[i] = blocksOffset + blocks.size();
+                writeInt(blocks, raw.length);
+                deflater.reset();
+                deflater.setDictionary(dictionary);
+                deflater.setInput(raw);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int length = deflater.deflate(output);
+                    blocks.write(output, 0, length);
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        blockOffsets[blockCount] = blocksOffset + blocks.size();
+
+        int blockTableOffset = blocksOffset + blocks.size();
+        int rowTableOffset = blockTableOffset + (blockCount + 1) * 4;
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(dataVersion);
+            out.writeInt(rows.size());
+            out.writeInt(blockCount);
+            out.writeInt(HEADER_SIZE);
+            out.writeInt(dictionary.length);
+            out.writeInt(blockTableOffset);
+            out.writeInt(rowTableOffset);
+            out.write(dictionary);
+            blocks.writeTo(out);
+            for (int offset : blockOffsets) out.writeInt(offset);
+            for (long row : rows) out.writeLong(row);
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile);
+        }
+        Log.i(TAG, "Built definition store: " + rows.size() + " entries, " + linkCount
+                + " links, " + rawBytes
+                + " raw bytes, " + file.length() + " bytes, dictionary " + dictionary.length
+                + " bytes in " + (System.currentTimeMillis() - startTime) + " ms.");
+    }
+
+    static byte[] trainDictionary(List<String> means) {
+        final Map<String, Integer> counts = new HashMap<>();
+        for (String mean : means) {
+            for (String sense : DictionarySearch.formatMean(mean).split("\n")) {
+                addFragment(counts, sense);
+                for (String fragment : sense.split(FRAGMENT_SEPARATORS)) addFragment(counts, fragment);
+            }
+        }
+
+        final Map<String, Integer> scores = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            int length = entry.getKey().getBytes(UTF_8).length;
+            if (entry.getValue() >= MIN_FRAGMENT_COUNT && length >= MIN_FRAGMENT_BYTES)
+                scores.put(entry.getKey(), (entry.getValue() - 1) * length);
+        }
+        List<String> fragments = new ArrayList<>(scores.keySet());
+        Collections.sort(fragments, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int result = scores.get(b).compareTo(scores.get(a));
+                return result != 0 ? result : a.compareTo(b);
+            }
+        });
+
+        List<byte[]> selected = new ArrayList<>();
+        int size = 0;
+        for (String fragment : fragments) {
+            byte[] bytes = fragment.getBytes(UTF_8);
+            if (size + bytes.length > DICTIONARY_SIZE) continue;
+            selected.add(bytes);
+            size += bytes.length;
+        }
+
+        // Deflate matches nearer the end of the dictionary with shorter distances.
+        byte[] dictionary = new byte[size];
+        int position = 0;
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            byte[] bytes = selected.get(i);
+            System.arraycopy(bytes, 0, dictionary, position, bytes.length);
+            position += bytes.length;
+        }
+        return dictionary;
+    }
+
+    private static int writeLinks(ByteArrayOutputStream output, String mean, String word,
+                                  Map<String, Long> headwordRows) {
+        List<LinkTextData> candidates = DictionarySearch.findLinkCandidates(mean, word);
+        List<LinkTextData> links = new ArrayList<>(candidates.size());
+        for (LinkTextData candidate : candidates) {
+            Long row = headwordRows.get(DictionarySearch.normalize(candidate.getText()));
+            if (row != null) links.add(new LinkTextData(
+                    candidate.getStart(), candidate.getEnd(), candidate.getText(), row));
+        }
+
+        writeVarint(output, links.size());
+        int previousEnd = 0;
+        for (LinkTextData link : links) {
+            writeVarint(output, link.getStart() - previousEnd);
+            writeVarint(output, link.getEnd() - link.getStart());
+            writeVarint(output, link.getRow());
+            previousEnd = link.getEnd();
+        }
+        return links.size();
+    }
+
+    private static void addFragment(Map<String, Integer> counts, String fragment) {
+        String trimmed = fragment.trim();
+        if (trimmed.isEmpty()) return;
+        Integer count = counts.get(trimmed);
+        counts.put(trimmed, count == null ? 1 : count + 1);
+    }
+
+    int size() {
+        return entryCount;
+    }
+
+    boolean seek(long row) {
+        int index = findRow(row);
+        if (index < 0) return false;
+        try {
+            decodeBlock(index / BLOCK_ENTRIES);
+        } catch (DataFormatException e) {
+            Log.e(TAG, "Corrupt definition block.", e);
+            currentBlock = -1;
+            return false;
+        }
+
+        position = 0;
+        for (int i = index % BLOCK_ENTRIES; i > 0; i--) {
+            skipString();
+            skipString();
+            for (int j = readVarint() * 3; j > 0; j--) readVarint();
+        }
+        word = readString();
+        mean = readString();
+
+        linkCount = readVarint();
+        if (linkStarts.length < linkCount) {
+            int capacity = Math.max(linkCount, linkStarts.length * 2);
+            linkStarts = new int[capacity];
+            linkEnds = new int[capacity];
+            linkRows = new long[capacity];
+        }
+        int previousEnd = 0;
+        for (int i = 0; i < linkCount; i++) {
+            linkStarts[i] = previousEnd + readVarint();
+            linkEnds[i] = linkStarts[i] + readVarint();
+            linkRows[i] = readVarint();
+            previousEnd = linkEnds[i];
+        }
+        return true;
+    }
+
+    String word() {
+        return word;
+    }
+
+    String mean() {
+        return mean;
+    }
+
+    int linkCount() {
+        return linkCount;
+    }
+
+    int linkStart(int index) {
+        return linkStarts[index];
+    }
+
+    int linkEnd(int index) {
+        return linkEnds[index];
+    }
+
+    long linkRow(int index) {
+        return linkRows[index];
+    }
+
+    private int findRow(long row) {
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = buffer.getLong(rowTableOffset + middle * 8);
+            if (value < row) low = middle + 1;
+            else if (value > row) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    private void decodeBlock(int index) throws DataFormatException {
+        if (index == currentBlock) return;
+        currentBlock = -1;
+
+        int start = buffer.getInt(blockTableOffset + index * 4);
+        int end = buffer.getInt(blockTableOffset + (index + 1) * 4);
+        int rawLength = buffer.getInt(start);
+        int compressedLength = end - start - 4;
+        if (input.length < compressedLength + 1) input = new byte[compressedLength + 1];
+        if (block.length < rawLength) block = new byte[Math.max(rawLength, block.length * 2)];
+        buffer.position(start + 4);
+        buffer.get(input, 0, compressedLength);
+
+        // Raw inflate needs one trailing dummy byte and never asks for the dictionary itself.
+        inflater.reset();
+        inflater.setDictionary(dictionary);
+        inflater.setInput(input, 0, compressedLength + 1);
+        int blockLength = 0;
+        while (blockLength < rawLength) {
+            int length = inflater.inflate(block, blockLength, rawLength - blockLength);
+            if (length == 0 && (inflater.finished() || inflater.needsInput()))
+                throw new DataFormatException("Truncated block " + index);
+            blockLength += length;
+        }
+        currentBlock = index;
+    }
+
+    private String readString() {
+        int length = readVarint();
+        String text = new String(block, position, length, UTF_8);
+        position += length;
+        return text;
+    }
+
+    private void skipString() {
+        int length = readVarint();
+        position += length;
+    }
+
+    private int readVarint() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = block[position++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeString(ByteArrayOutputStream output, String text) {
+        byte[] bytes = text.getBytes(UTF_8);
+        writeVarint(output, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7fL) != 0) {
+            output.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream output, int value) {
+        output.write(value >>> 24);
+        output.write(value >>> 16);
+        output.write(value >>> 8);
+        output.write(value);
+    }
+
+    void close() {
+        inflater.end();
+    }
+}
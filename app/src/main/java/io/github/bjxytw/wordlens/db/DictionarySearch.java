@@ -3,152 +3,504 @@ package io.github.bjxytw.wordlens.db;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import io.github.bjxytw.wordlens.data.DictionaryData;
+import io.github.bjxytw.wordlens.data.LinkTextData;
 
 
 public class DictionarySearch {
-    private static final String REGEX_SYMBOL = "[!-/:-@\\[-`{-~]";
-    private static final String SQL_SEARCH = "SELECT * FROM items WHERE word COLLATE nocase=?";
+    private static final String TAG = "DictionarySearch";
+    static final String SQL_SEARCH_INFLECTION = "SELECT rowid FROM items WHERE word_key="
+            + "(SELECT base FROM inflections WHERE form=?) ORDER BY rowid";
+    private static final String SQL_SEARCH_ROWS = "SELECT rowid, word, mean FROM items WHERE rowid IN ";
+    private static final String SQL_SEARCH_ROWS_ORDER = " ORDER BY rowid";
     private static final String WORD_COL = "word";
     private static final String MEAN_COL = "mean";
+    private static final int MAX_QUERY_ARGS = 500;
+    private static final int MIN_LINK_LENGTH = 2;
+    private static final int RESULT_CACHE_SIZE = 256;
+    private static final int MISS_CACHE_SIZE = 64;
+    private static final long FUZZY_TIME_BUDGET_NANOS = 2000000L;
+    private static final int FUZZY_CANDIDATE_BUDGET = 64;
+    private static final int MAX_REVERSE_CANDIDATES = 200;
+    private final LruCache<String, DictionaryData> resultCache = new LruCache<>(RESULT_CACHE_SIZE);
+    private final LruCache<String, Boolean> missCache = new LruCache<>(MISS_CACHE_SIZE);
+    private final Context context;
+    private final DatabaseHelper helper;
     private SQLiteDatabase database;
+    private HeadwordFilter filter;
+    private HeadwordIndex index;
+    private DefinitionStore definitions;
+    private PrefixSearch prefixSearch;
+    private FuzzyMatcher fuzzyMatcher;
+    private PhraseMatcher phraseMatcher;
+    private ReverseIndex reverseIndex;
+
+    public interface ReverseIndexListener {
+        void onIndexProgress(int indexedRows, int totalRows);
+    }
 
-    public DictionarySearch(Context context) {
-        DatabaseHelper helper = new DatabaseHelper(context);
+    public DictionarySearch(Context context, DatabaseHelper.InstallListener installListener) {
+        this.context = context;
+        helper = new DatabaseHelper(context);
+        helper.setInstallListener(installListener);
         database = helper.getReadableDatabase();
+        openDerivedFiles();
+    }
+
+    // Only loads files that are already built; missing or stale ones leave the lookups on SQL
+    // until buildDerivedFiles has run on the update thread.
+    private void openDerivedFiles() {
+        if (database == null) return;
+        int dataVersion = DictionaryUpdater.readDataVersion(database);
+        filter = HeadwordFilter.load(helper.getFilterPath(), dataVersion);
+        MappedHeadwordIndex mappedIndex = MappedHeadwordIndex.load(helper.getIndexPath(), dataVersion);
+        index = mappedIndex != null ? mappedIndex : new SqlHeadwordIndex(database);
+        definitions = DefinitionStore.load(helper.getDefinitionsPath(), dataVersion);
+    }
+
+    // Returns whether any file was built, in which case onDatabaseUpdated loads them.
+    boolean buildDerivedFiles() {
+        SQLiteDatabase source = SQLiteDatabase.openDatabase(
+                helper.getDatabaseFile().getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        boolean built = false;
+        try {
+            try {
+                built |= HeadwordFilter.buildIfStale(helper.getFilterPath(), source);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not build headword filter.", e);
+            }
+            try {
+                built |= MappedHeadwordIndex.buildIfStale(helper.getIndexPath(), source);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not build headword index.", e);
+            }
+            try {
+                built |= DefinitionStore.buildIfStale(helper.getDefinitionsPath(), source);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not build definition store.", e);
+            }
+        } finally {
+            source.close();
+        }
+        return built;
+    }
+
+    DictionaryUpdater createUpdater() {
+        return new DictionaryUpdater(context, helper.getDatabaseFile(), helper.getFilterPath(),
+                helper.getIndexPath(), helper.getDefinitionsPath(), helper.getReverseIndexPath());
+    }
+
+    boolean buildReverseIndex(ReverseIndexListener listener) {
+        SQLiteDatabase source = SQLiteDatabase.openDatabase(
+                helper.getDatabaseFile().getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            return ReverseIndex.build(source, helper.getReverseIndexPath(), listener);
+        } finally {
+            source.close();
+        }
+    }
+
+    void onDatabaseUpdated() {
+        if (database == null) return;
+        if (definitions != null) definitions.close();
+        openDerivedFiles();
+        clearCache();
+    }
+
+    public boolean isAvailable() {
+        return database != null;
     }
 
     public void close() {
+        Log.i(TAG, cacheStats());
+        if (fuzzyMatcher != null) Log.i(TAG, fuzzyMatcher.stats());
+        clearCache();
+        if (definitions != null) definitions.close();
+        if (reverseIndex != null) reverseIndex.close();
         if (database != null) database.close();
     }
 
+    public void clearCache() {
+        resultCache.evictAll();
+        missCache.evictAll();
+    }
+
+    public String cacheStats() {
+        return String.format(Locale.US,
+                "Cache hits=%d, negative hits=%d, misses=%d, evictions=%d, negative evictions=%d",
+                resultCache.hitCount(), missCache.hitCount(), missCache.missCount(),
+                resultCache.evictionCount(), missCache.evictionCount());
+    }
+
     public DictionaryData search(String word)  {
-        String searchWord = removeBothEndSymbol(word.toLowerCase());
+        String searchWord = TokenNormalizer.trim(normalize(word));
         if (searchWord != null) {
-            DictionaryData result = searchDirect(searchWord);
-            if (result == null) result = searchWithoutAbbreviation(searchWord);
-            if (result == null) result = searchBaseForm(searchWord);
+            String key = normalize(searchWord);
+            DictionaryData result = resultCache.get(key);
+            if (result != null) return result;
+            if (missCache.get(key) != null) return null;
+
+            // Headword keys keep their accents, so the folded form is only a fallback.
+            String foldedWord = TokenNormalizer.fold(searchWord);
+            result = searchExact(searchWord);
+            if (result == null && foldedWord != null && !foldedWord.equals(searchWord))
+                result = searchExact(normalize(foldedWord));
+            if (result == null && foldedWord != null) result = searchFuzzy(foldedWord);
+
+            if (result != null) resultCache.put(key, result);
+            else missCache.put(key, Boolean.TRUE);
             return result;
         }
         return null;
     }
 
+    private DictionaryData searchExact(String word) {
+        DictionaryData result = searchDirect(word);
+        if (result == null) result = searchWithoutAbbreviation(word);
+        if (result == null) result = searchInflection(word);
+        return result;
+    }
+
+    public boolean mightContain(String word) {
+        if (database == null) return false;
+        return filter == null || filter.mightContain(normalize(word));
+    }
+
     public DictionaryData searchDirect(String searchWord) {
         if (database == null) return null;
+        String key = normalize(searchWord);
+        if (filter != null && !filter.mightContain(key)) return null;
+
+        long[] rows = index.findRows(key);
+        if (rows == null) return null;
+        return readRows(rows);
+    }
+
+    public List<String> suggest(String prefix, int limit) {
+        if (database == null || prefixSearch == null) return new ArrayList<>();
+        return prefixSearch.suggest(normalize(prefix), limit);
+    }
+
+    public List<DictionaryData> searchReverse(final String query, int limit) {
+        List<DictionaryData> results = new ArrayList<>();
+        if (database == null) return results;
+        if (reverseIndex == null) reverseIndex = ReverseIndex.open(helper.getReverseIndexPath());
+        if (reverseIndex == null) return results;
+
+        long[] rows = reverseIndex.find(query, MAX_REVERSE_CANDIDATES);
+        final List<String> words = new ArrayList<>(rows.length);
+        final List<String> means = new ArrayList<>(rows.length);
+        if (definitions != null) {
+            for (long row : rows) {
+                if (!definitions.seek(row)) continue;
+                words.add(definitions.word());
+                means.add(definitions.mean());
+            }
+        } else {
+            List<Long> rowList = new ArrayList<>(rows.length);
+            for (long row : rows) rowList.add(row);
+            for (String[] args : chunkArgs(rowList)) {
+                Cursor dbCursor = database.rawQuery(SQL_SEARCH_ROWS + placeholders(args.length)
+                        + SQL_SEARCH_ROWS_ORDER, args);
+                int wordIndex = dbCursor.getColumnIndex(WORD_COL);
+                int meanIndex = dbCursor.getColumnIndex(MEAN_COL);
+                while (dbCursor.moveToNext()) {
+                    words.add(dbCursor.getString(wordIndex));
+                    means.add(formatMean(dbCursor.getString(meanIndex)));
+                }
+                dbCursor.close();
+            }
+        }
+
+        // Entries that give the query early in a short meaning are the closest translations.
+        Integer[] order = new Integer[words.size()];
+        final int[] positions = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            positions[i] = ReverseIndex.matchPosition(means.get(i), query);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (positions[a] != positions[b]) return positions[a] < positions[b] ? -1 : 1;
+                return means.get(a).length() - means.get(b).length();
+            }
+        });
+
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < order.length && results.size() < limit; i++) {
+            String word = words.get(order[i]);
+            if (keys.add(normalize(word)))
+                results.add(new DictionaryData(word, ReverseIndex.snippet(means.get(order[i]), query)));
+        }
+        return results;
+    }
+
+    public PhraseMatcher phraseMatcher() {
+        return phraseMatcher;
+    }
+
+    // Reads every headword, so LookupExecutor runs it on the update thread and hands the
+    // result to the lookup thread; until then suggestions and fuzzy matching are skipped.
+    HeadwordSearch buildHeadwordSearch() {
+        PrefixSearch headwords = PrefixSearch.build(database);
+        return new HeadwordSearch(headwords,
+                new FuzzyMatcher(headwords.keys(), headwords.ranks(),
+                        FUZZY_TIME_BUDGET_NANOS, FUZZY_CANDIDATE_BUDGET),
+                new PhraseMatcher(headwords.keys()));
+    }
+
+    void setHeadwordSearch(HeadwordSearch headwordSearch) {
+        if (fuzzyMatcher != null) Log.i(TAG, fuzzyMatcher.stats());
+        prefixSearch = headwordSearch.prefixSearch;
+        fuzzyMatcher = headwordSearch.fuzzyMatcher;
+        phraseMatcher = headwordSearch.phraseMatcher;
+        missCache.evictAll();
+    }
+
+    private DictionaryData searchInflection(String word) {
+        if (database == null) return null;
+        String key = normalize(word);
+        if (filter != null && !filter.mightContain(key)) return null;
+
+        Cursor dbCursor = database.rawQuery(SQL_SEARCH_INFLECTION, new String[]{key});
+        long[] rows = new long[dbCursor.getCount()];
+        for (int i = 0; dbCursor.moveToNext(); i++) rows[i] = dbCursor.getLong(0);
+        dbCursor.close();
+        if (rows.length == 0) return null;
+        return readRows(rows);
+    }
+
+    private DictionaryData searchFuzzy(String word) {
+        if (database == null || fuzzyMatcher == null) return null;
+        String match = fuzzyMatcher.match(normalize(word));
+        return match != null ? searchDirect(match) : null;
+    }
+
+    public DictionaryData searchRow(long row) {
+        if (definitions == null || !definitions.seek(row)) return null;
+        String searchWord = definitions.word();
+        DictionaryData result = resultCache.get(normalize(searchWord));
+        if (result == null) {
+            result = searchDirect(searchWord);
+            if (result != null) resultCache.put(normalize(searchWord), result);
+        }
+        return result;
+    }
+
+    private DictionaryData readRows(long[] rows) {
         String wordText = null;
         StringBuilder meanText = new StringBuilder();
-        Cursor dbCursor = database.rawQuery(SQL_SEARCH, new String[]{searchWord});
-        while (dbCursor.moveToNext()) {
-            if (wordText == null)
-                wordText = dbCursor.getString(dbCursor.getColumnIndex(WORD_COL));
-            meanText.append(dbCursor.getString(dbCursor.getColumnIndex(MEAN_COL))
-                    .replace(" / ", "\n"));
-            meanText.append("\n\n");
+        if (definitions != null) {
+            List<LinkTextData> links = new ArrayList<>();
+            for (long row : rows) {
+                if (!definitions.seek(row)) continue;
+                if (wordText == null) wordText = definitions.word();
+                appendLinks(links, meanText.length());
+                appendMean(meanText, definitions.mean());
+            }
+            if (wordText == null || meanText.length() == 0)
+                return null;
+            return new DictionaryData(wordText, meanText.toString(), links);
+        } else {
+            String[] args = new String[rows.length];
+            for (int i = 0; i < rows.length; i++) args[i] = String.valueOf(rows[i]);
+            Cursor dbCursor = database.rawQuery(SQL_SEARCH_ROWS + placeholders(args.length)
+                    + SQL_SEARCH_ROWS_ORDER, args);
+            while (dbCursor.moveToNext()) {
+                if (wordText == null)
+                    wordText = dbCursor.getString(dbCursor.getColumnIndex(WORD_COL));
+                appendMean(meanText, formatMean(dbCursor.getString(dbCursor.getColumnIndex(MEAN_COL))));
+            }
+            dbCursor.close();
         }
-        dbCursor.close();
 
         if (wordText == null || meanText.length() == 0)
             return null;
         return new DictionaryData(wordText, meanText.toString());
     }
 
-    private DictionaryData searchWithoutAbbreviation(String word) {
-        int abbreviationIndex = word.lastIndexOf("'");
-        if (abbreviationIndex != -1)
-            return searchDirect(word.substring(0, abbreviationIndex));
-        return null;
-    }
+    public Map<String, DictionaryData> searchAll(Collection<String> words) {
+        Map<String, DictionaryData> results = new HashMap<>();
+        if (database == null) return results;
 
-    private DictionaryData searchBaseForm(String word) {
-        WordEndEnum wordEnd = detectWordEnd(word);
-        if (wordEnd != null) {
-            StringBuilder searchWord = new StringBuilder();
-            switch (wordEnd) {
-                case IED:
-                case IES:
-                case IER:
-                case IEST:
-                    searchWord.append(subStringFirst(word, wordEnd.getSize()));
-                    searchWord.append('y');
-                    return searchDirect(searchWord.toString());
-                case ING:
-                case ED:
-                case ER:
-                case EST:
-                    Character consecutiveLetter = compareLetter(word,
-                            wordEnd.getSize() + 1, wordEnd.getSize() + 2);
-                    if (consecutiveLetter != null) {
-                        searchWord.append(subStringFirst(word, wordEnd.getSize() + 2));
-                        searchWord.append(consecutiveLetter);
-                        DictionaryData result = searchDirect(searchWord.toString());
-                        if (result != null) return result;
-                        else searchWord.setLength(0);
-                    }
-                case ES:
-                    searchWord.append(subStringFirst(word, wordEnd.getSize()));
-                    searchWord.append('e');
-                    DictionaryData result = searchDirect(searchWord.toString());
-                    if (result == null) {
-                        searchWord.deleteCharAt(searchWord.length() - 1);
-                        result = searchDirect(searchWord.toString());
-                    }
-                    return result;
-                case S:
-                    searchWord.append(subStringFirst(word, wordEnd.getSize()));
-                    return searchDirect(searchWord.toString());
+        SortedMap<Long, String> rowKeys = new TreeMap<>();
+        for (String key : filterKeys(words)) {
+            long[] rows = index.findRows(key);
+            if (rows != null)
+                for (long row : rows) rowKeys.put(row, key);
+        }
+
+        Map<String, String> wordTexts = new HashMap<>();
+        Map<String, StringBuilder> meanTexts = new HashMap<>();
+        Map<String, List<LinkTextData>> linkLists = new HashMap<>();
+        if (definitions != null) {
+            for (Map.Entry<Long, String> entry : rowKeys.entrySet()) {
+                if (!definitions.seek(entry.getKey())) continue;
+                List<LinkTextData> links = linkLists.get(entry.getValue());
+                if (links == null) {
+                    links = new ArrayList<>();
+                    linkLists.put(entry.getValue(), links);
+                }
+                StringBuilder meanText = meanTexts.get(entry.getValue());
+                appendLinks(links, meanText == null ? 0 : meanText.length());
+                appendResult(wordTexts, meanTexts, entry.getValue(),
+                        definitions.word(), definitions.mean());
+            }
+        } else {
+            for (String[] args : chunkArgs(rowKeys.keySet())) {
+                Cursor dbCursor = database.rawQuery(SQL_SEARCH_ROWS + placeholders(args.length)
+                        + SQL_SEARCH_ROWS_ORDER, args);
+                int wordIndex = dbCursor.getColumnIndex(WORD_COL);
+                int meanIndex = dbCursor.getColumnIndex(MEAN_COL);
+                while (dbCursor.moveToNext())
+                    appendResult(wordTexts, meanTexts, rowKeys.get(dbCursor.getLong(0)),
+                            dbCursor.getString(wordIndex), formatMean(dbCursor.getString(meanIndex)));
+                dbCursor.close();
             }
         }
-        return null;
+
+        for (Map.Entry<String, StringBuilder> entry : meanTexts.entrySet()) {
+            String wordText = wordTexts.get(entry.getKey());
+            if (wordText != null && entry.getValue().length() > 0)
+                results.put(entry.getKey(), new DictionaryData(wordText,
+                        entry.getValue().toString(), linkLists.get(entry.getKey())));
+        }
+        return results;
+    }
+
+    public Set<String> containsAll(Collection<String> words) {
+        Set<String> results = new HashSet<>();
+        if (database == null) return results;
+
+        for (String key : filterKeys(words))
+            if (index.findRows(key) != null) results.add(key);
+        return results;
     }
 
-    private WordEndEnum detectWordEnd(String word) {
-        for (WordEndEnum wordEnd : WordEndEnum.values()) {
-            String end = subStringLast(word, wordEnd.getSize());
-            if (end != null && end.equals(wordEnd.getText()))
-                return wordEnd;
+    public static String normalize(String word) {
+        return word.toLowerCase();
+    }
+
+    private static void appendResult(Map<String, String> wordTexts, Map<String, StringBuilder> meanTexts,
+                                     String key, String word, String mean) {
+        StringBuilder meanText = meanTexts.get(key);
+        if (meanText == null) {
+            meanText = new StringBuilder();
+            meanTexts.put(key, meanText);
+            wordTexts.put(key, word);
         }
-        return null;
+        appendMean(meanText, mean);
     }
 
-    private static String subStringFirst(String word, int backWardIndex) {
-        int size = word.length();
-        if (backWardIndex < size)
-            return word.substring(0, size - backWardIndex);
-        return null;
+    private void appendLinks(List<LinkTextData> links, int offset) {
+        String mean = definitions.mean();
+        for (int i = 0; i < definitions.linkCount(); i++) {
+            int start = definitions.linkStart(i);
+            int end = definitions.linkEnd(i);
+            links.add(new LinkTextData(offset + start, offset + end,
+                    mean.substring(start, end), definitions.linkRow(i)));
+        }
     }
 
-    private static String subStringLast(String word, int backWardIndex) {
-        int size = word.length();
-        if (backWardIndex < size)
-            return word.substring(size - backWardIndex);
-        return null;
+    public static List<LinkTextData> findLinkCandidates(String mean, String word) {
+        List<LinkTextData> candidates = new ArrayList<>();
+        int length = mean.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && isLinkLetter(mean.charAt(i))) {
+                if (start < 0) start = i;
+            } else if (start >= 0) {
+                boolean isHeadword = i - start == word.length()
+                        && mean.regionMatches(true, start, word, 0, word.length());
+                if (i - start >= MIN_LINK_LENGTH && !isHeadword)
+                    candidates.add(new LinkTextData(start, i, mean.substring(start, i)));
+                start = -1;
+            }
+        }
+        return candidates;
+    }
+
+    private static boolean isLinkLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    static String formatMean(String mean) {
+        return mean.replace(" / ", "\n");
+    }
+
+    private static void appendMean(StringBuilder meanText, String mean) {
+        meanText.append(mean);
+        meanText.append("\n\n");
     }
 
-    private static Character compareLetter(String word, int backWardIndex1, int backWardIndex2) {
-        int size = word.length();
-        if (backWardIndex1 < size && backWardIndex2 < size) {
-            char char1 = word.charAt(size - backWardIndex1);
-            char char2 = word.charAt(size - backWardIndex2);
-            if (char1 == char2) return char1;
+    private Set<String> filterKeys(Collection<String> words) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String word : words) {
+            String key = normalize(word);
+            if (filter == null || filter.mightContain(key)) keys.add(key);
         }
-        return null;
+        return keys;
     }
 
-    public static String removeBothEndSymbol(String text) {
-        int size = text.length();
-        if (size > 0) {
-            int begin = 0;
-            int end = size;
-            if (text.substring(0, 1).matches(REGEX_SYMBOL))
-                begin = 1;
-            if (text.substring(size - 1).matches(REGEX_SYMBOL))
-                end = size - 1;
+    private static List<String[]> chunkArgs(Collection<Long> rows) {
+        List<String[]> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>(Math.min(rows.size(), MAX_QUERY_ARGS));
+        for (long row : rows) {
+            chunk.add(String.valueOf(row));
+            if (chunk.size() == MAX_QUERY_ARGS) {
+                chunks.add(chunk.toArray(new String[0]));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) chunks.add(chunk.toArray(new String[0]));
+        return chunks;
+    }
 
-            if (end - begin > 0)
-                return text.substring(begin, end);
+    private static String placeholders(int count) {
+        StringBuilder builder = new StringBuilder(count * 2 + 1);
+        builder.append('(');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) builder.append(',');
+            builder.append('?');
         }
+        return builder.append(')').toString();
+    }
+
+    private DictionaryData searchWithoutAbbreviation(String word) {
+        int abbreviationIndex = word.lastIndexOf("'");
+        if (abbreviationIndex != -1)
+            return searchDirect(word.substring(0, abbreviationIndex));
         return null;
     }
 
+    static final class HeadwordSearch {
+        final PrefixSearch prefixSearch;
+        final FuzzyMatcher fuzzyMatcher;
+        final PhraseMatcher phraseMatcher;
+
+        HeadwordSearch(PrefixSearch prefixSearch, FuzzyMatcher fuzzyMatcher, PhraseMatcher phraseMatcher) {
+            this.prefixSearch = prefixSearch;
+            this.fuzzyMatcher = fuzzyMatcher;
+            this.phraseMatcher = phraseMatcher;
+        }
+    }
 }
@@ -0,0 +1,240 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+final class DictionaryUpdater {
+    private static final String TAG = "DictionaryUpdater";
+    private static final String DELTA_DIR = "deltas";
+    private static final String DELTA_PREFIX = "delta_";
+    private static final String DELTA_SUFFIX = ".tsv";
+    private static final String TABLE_INFO = "dictionary_info";
+    private static final String KEY_DATA_VERSION = "data_version";
+    static final int BASE_DATA_VERSION = 1;
+    static final String INSERT = "+";
+    static final String UPDATE = "~";
+    static final String DELETE = "-";
+
+    private static final String SQL_INSERT = "INSERT OR REPLACE INTO items"
+            + "(item_id, word, mean, level, word_key) VALUES(?, ?, ?, ?, lower(?))";
+    private static final String SQL_UPDATE = "UPDATE items"
+            + " SET word=?, mean=?, level=?, word_key=lower(?) WHERE item_id=?";
+    private static final String SQL_DELETE = "DELETE FROM items WHERE item_id=?";
+
+    private final Context context;
+    private final File databasePath;
+    private final File filterPath;
+    private final File indexPath;
+    private final File definitionsPath;
+    private final File reverseIndexPath;
+
+    DictionaryUpdater(Context context, File databasePath, File filterPath, File indexPath,
+                      File definitionsPath, File reverseIndexPath) {
+        this.context = context;
+        this.databasePath = databasePath;
+        this.filterPath = filterPath;
+        this.indexPath = indexPath;
+        this.definitionsPath = definitionsPath;
+        this.reverseIndexPath = reverseIndexPath;
+    }
+
+    int update() throws IOException {
+        SortedMap<Integer, String> packs = listPacks();
+        if (packs.isEmpty()) return 0;
+
+        // The lookup connection keeps reading from the WAL snapshot while a pack is applied.
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(databasePath.getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING);
+        try {
+            int applied = 0;
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_INFO
+                    + "(name TEXT PRIMARY KEY, value TEXT)");
+            int version = readDataVersion(db);
+            for (Map.Entry<Integer, String> pack : packs.tailMap(version + 1).entrySet()) {
+                applyPack(db, pack.getKey(), pack.getValue());
+                applied++;
+            }
+            if (applied > 0) {
+                HeadwordFilter.build(db, filterPath);
+                MappedHeadwordIndex.build(db, indexPath);
+                DefinitionStore.build(db, definitionsPath);
+                ReverseIndex.reset(reverseIndexPath);
+            }
+            return applied;
+        } finally {
+            db.close();
+        }
+    }
+
+    private SortedMap<Integer, String> listPacks() throws IOException {
+        SortedMap<Integer, String> packs = new TreeMap<>();
+        String[] names = context.getAssets().list(DELTA_DIR);
+        if (names == null) return packs;
+
+        for (String name : names) {
+            if (!name.startsWith(DELTA_PREFIX) || !name.endsWith(DELTA_SUFFIX)) continue;
+            try {
+                int version = Integer.parseInt(name.substring(
+                        DELTA_PREFIX.length(), name.length() - DELTA_SUFFIX.length()));
+                packs.put(version, DELTA_DIR + "/" + name);
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Ignored delta pack " + name);
+            }
+        }
+        return packs;
+    }
+
+    private void applyPack(SQLiteDatabase db, int version, String assetName) throws IOException {
+        Log.i(TAG, "Applying delta pack " + version + ".");
+        int rows = 0;
+
+        db.beginTransaction();
+        try (InputStream input = context.getAssets().open(assetName);
+             SQLiteStatement insert = db.compileStatement(SQL_INSERT);
+             SQLiteStatement update = db.compileStatement(SQL_UPDATE);
+             SQLiteStatement delete = db.compileStatement(SQL_DELETE)) {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(input, Charset.forName("UTF-8")));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                DeltaRow row = parseRow(line);
+                if (row == null) continue;
+                switch (row.operation) {
+                    case INSERT:
+                        insert.bindLong(1, row.id);
+                        insert.bindString(2, row.word);
+                        insert.bindString(3, row.mean);
+                        insert.bindLong(4, row.level);
+                        insert.bindString(5, row.word);
+                        insert.executeInsert();
+                        break;
+                    case UPDATE:
+                        update.bindString(1, row.word);
+                        update.bindString(2, row.mean);
+                        update.bindLong(3, row.level);
+                        update.bindString(4, row.word);
+                        update.bindLong(5, row.id);
+                        update.executeUpdateDelete();
+                        break;
+                    case DELETE:
+                        delete.bindLong(1, row.id);
+                        delete.executeUpdateDelete();
+                        break;
+                }
+                rows++;
+            }
+
+            if (rows > 0)
+                DatabaseHelper.createInflectionIndex(db, DatabaseHelper.loadIrregularForms(context));
+            writeDataVersion(db, version);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.i(TAG, "Applied delta pack " + version + ": " + rows + " rows.");
+    }
+
+    // Parses one line of a delta pack; blank lines and comments return null.
+    static DeltaRow parseRow(String line) throws IOException {
+        if (line.isEmpty() || line.startsWith("#")) return null;
+        String[] columns = line.split("\t", -1);
+        try {
+            switch (columns[0]) {
+                case INSERT:
+                case UPDATE:
+                    checkColumns(columns, 5, line);
+                    return new DeltaRow(columns[0], Long.parseLong(columns[1]), unescape(columns[2]),
+                            unescape(columns[3]), Long.parseLong(columns[4]));
+                case DELETE:
+                    checkColumns(columns, 2, line);
+                    return new DeltaRow(columns[0], Long.parseLong(columns[1]), null, null, 0);
+                default:
+                    throw new IOException("Unknown delta operation: " + line);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid delta line: " + line, e);
+        }
+    }
+
+    static void checkColumns(String[] columns, int count, String line) throws IOException {
+        if (columns.length < count) throw new IOException("Invalid delta line: " + line);
+    }
+
+    // The derived files record the version they were built from, so files left behind by an
+    // interrupted update are rebuilt instead of served.
+    static int readDataVersion(SQLiteDatabase db) {
+        String value = readInfo(db, KEY_DATA_VERSION);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Invalid data version.", e);
+            }
+        }
+        return BASE_DATA_VERSION;
+    }
+
+    private static String readInfo(SQLiteDatabase db, String name) {
+        try (Cursor table = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type='table' AND name=?",
+                new String[]{TABLE_INFO})) {
+            if (!table.moveToFirst()) return null;
+        }
+        try (Cursor cursor = db.rawQuery("SELECT value FROM " + TABLE_INFO + " WHERE name=?",
+                new String[]{name})) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    private static void writeDataVersion(SQLiteDatabase db, int version) {
+        writeInfo(db, KEY_DATA_VERSION, String.valueOf(version));
+    }
+
+    private static void writeInfo(SQLiteDatabase db, String name, String value) {
+        db.execSQL("INSERT OR REPLACE INTO " + TABLE_INFO + "(name, value) VALUES(?, ?)",
+                new Object[]{name, value});
+    }
+
+    static String unescape(String text) {
+        if (text.indexOf('\\') < 0) return text;
+        StringBuilder builder = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                if (next == 't') builder.append('\t');
+                else if (next == 'n') builder.append('\n');
+                else builder.append(next);
+            } else builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    static final class DeltaRow {
+        final String operation;
+        final long id;
+        final String word;
+        final String mean;
+        final long level;
+
+        DeltaRow(String operation, long id, String word, String mean, long level) {
+            this.operation = operation;
+            this.id = id;
+            this.word = word;
+            this.mean = mean;
+            this.level = level;
+        }
+    }
+}
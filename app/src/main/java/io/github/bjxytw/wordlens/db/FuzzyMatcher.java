@@ -0,0 +1,256 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+final class FuzzyMatcher {
+    private static final String TAG = "FuzzyMatcher";
+    private static final int MIN_LENGTH = 3;
+    private static final int MAX_LENGTH = 24;
+    private static final int SHORT_LENGTH = 5;
+    private static final float EDIT_COST = 1.0f;
+    private static final float CONFUSION_COST = 0.4f;
+    private static final float MAX_DISTANCE = EDIT_COST;
+    private static final float SHORT_MAX_DISTANCE = CONFUSION_COST * 2;
+    private static final int NO_SKIP = -1;
+    private static final int TABLE_SIZE = 128;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Typical OCR misreadings of Latin text, each usable in both directions.
+    private static final String[][] CONFUSIONS = {
+            {"rn", "m"}, {"vv", "w"}, {"cl", "d"}, {"ii", "u"}, {"ri", "n"}, {"nn", "m"},
+            {"l", "1"}, {"l", "i"}, {"i", "1"}, {"l", "|"}, {"o", "0"}, {"s", "5"},
+            {"z", "2"}, {"b", "6"}, {"g", "9"}, {"e", "c"}, {"h", "b"}, {"u", "v"},
+            {"n", "h"}, {"t", "f"}, {"a", "o"}
+    };
+    private static final float[] SUBSTITUTION_COSTS = new float[TABLE_SIZE * TABLE_SIZE];
+
+    static {
+        Arrays.fill(SUBSTITUTION_COSTS, EDIT_COST);
+        for (int c = 0; c < TABLE_SIZE; c++) SUBSTITUTION_COSTS[c * TABLE_SIZE + c] = 0;
+        for (String[] confusion : CONFUSIONS) {
+            if (confusion[0].length() != 1 || confusion[1].length() != 1) continue;
+            char a = confusion[0].charAt(0);
+            char b = confusion[1].charAt(0);
+            SUBSTITUTION_COSTS[a * TABLE_SIZE + b] = CONFUSION_COST;
+            SUBSTITUTION_COSTS[b * TABLE_SIZE + a] = CONFUSION_COST;
+        }
+    }
+
+    private final String[] keys;
+    private final int[] ranks;
+    private final long[] entries;
+    private final long timeBudgetNanos;
+    private final int[] candidates;
+    private final char[] variant = new char[MAX_LENGTH * 2];
+    private float[] beforeRow = new float[MAX_LENGTH * 2 + 1];
+    private float[] previousRow = new float[MAX_LENGTH * 2 + 1];
+    private float[] currentRow = new float[MAX_LENGTH * 2 + 1];
+    private int candidateCount;
+    private long deadline;
+    private int queries;
+    private int overBudget;
+
+    FuzzyMatcher(String[] keys, int[] ranks, long timeBudgetNanos, int candidateBudget) {
+        long startTime = System.currentTimeMillis();
+        this.keys = keys;
+        this.ranks = ranks;
+        this.timeBudgetNanos = timeBudgetNanos;
+        candidates = new int[candidateBudget];
+
+        int count = 0;
+        for (String key : keys)
+            if (isIndexed(key)) count += key.length() + 1;
+        entries = new long[count];
+        count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
+            if (!isIndexed(key)) continue;
+            key.getChars(0, key.length(), variant, 0);
+            entries[count++] = entry(hash(variant, key.length(), NO_SKIP), i);
+            for (int skip = 0; skip < key.length(); skip++)
+                entries[count++] = entry(hash(variant, key.length(), skip), i);
+        }
+        Arrays.sort(entries);
+        Log.i(TAG, "Built fuzzy index: " + entries.length + " deletions in "
+                + (System.currentTimeMillis() - startTime) + " ms.");
+    }
+
+    String match(String query) {
+        int length = query.length();
+        if (!isIndexed(query)) return null;
+        queries++;
+        deadline = System.nanoTime() + timeBudgetNanos;
+        candidateCount = 0;
+
+        query.getChars(0, length, variant, 0);
+        boolean complete = collect(length);
+        for (int i = 0; i < CONFUSIONS.length && complete; i++) {
+            complete = collectConfusion(query, CONFUSIONS[i][0], CONFUSIONS[i][1])
+                    && collectConfusion(query, CONFUSIONS[i][1], CONFUSIONS[i][0]);
+        }
+
+        float maxDistance = length < SHORT_LENGTH ? SHORT_MAX_DISTANCE : MAX_DISTANCE;
+        int best = -1;
+        float bestDistance = Float.MAX_VALUE;
+        for (int i = 0; i < candidateCount; i++) {
+            if (System.nanoTime() > deadline) {
+                complete = false;
+                break;
+            }
+            int candidate = candidates[i];
+            float distance = distance(query, keys[candidate]);
+            if (distance > maxDistance) continue;
+            if (distance < bestDistance
+                    || (distance == bestDistance && ranks[candidate] < ranks[best])) {
+                best = candidate;
+                bestDistance = distance;
+            }
+        }
+        if (!complete) overBudget++;
+        return best >= 0 ? keys[best] : null;
+    }
+
+    String stats() {
+        return "Fuzzy queries: " + queries + ", over budget: " + overBudget;
+    }
+
+    private boolean collectConfusion(String query, String from, String to) {
+        int length = query.length() - from.length() + to.length();
+        for (int index = query.indexOf(from); index >= 0; index = query.indexOf(from, index + 1)) {
+            query.getChars(0, index, variant, 0);
+            to.getChars(0, to.length(), variant, index);
+            query.getChars(index + from.length(), query.length(), variant, index + to.length());
+            if (!collect(length)) return false;
+        }
+        return true;
+    }
+
+    // Symmetric deletion: the variant, or the variant with one letter removed, is looked up
+    // among the headwords and their own single-letter deletions.
+    private boolean collect(int length) {
+        if (!collectHash(hash(variant, length, NO_SKIP))) return false;
+        for (int skip = 0; skip < length; skip++) {
+            if (skip > 0 && variant[skip] == variant[skip - 1]) continue;
+            if (!collectHash(hash(variant, length, skip))) return false;
+        }
+        return true;
+    }
+
+    private boolean collectHash(long hash) {
+        if (System.nanoTime() > deadline) return false;
+        for (int i = lowerBound(hash << 32); i < entries.length && entries[i] >>> 32 == hash; i++) {
+            int candidate = (int) entries[i];
+            if (contains(candidate)) continue;
+            if (candidateCount == candidates.length) return false;
+            candidates[candidateCount++] = candidate;
+        }
+        return true;
+    }
+
+    private boolean contains(int candidate) {
+        for (int i = 0; i < candidateCount; i++)
+            if (candidates[i] == candidate) return true;
+        return false;
+    }
+
+    private int lowerBound(long value) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries[middle] < value) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // Restricted Damerau-Levenshtein distance in which OCR confusions, including the
+    // two-letter ones such as "rn" for "m", cost less than an ordinary edit.
+    float distance(String query, String key) {
+        int queryLength = query.length();
+        int keyLength = key.length();
+        if (keyLength >= currentRow.length) return Float.MAX_VALUE;
+
+        for (int j = 0; j <= keyLength; j++) previousRow[j] = j * EDIT_COST;
+        for (int i = 1; i <= queryLength; i++) {
+            char q = query.charAt(i - 1);
+            currentRow[0] = i * EDIT_COST;
+            for (int j = 1; j <= keyLength; j++) {
+                char k = key.charAt(j - 1);
+                float cost = previousRow[j - 1] + substitutionCost(q, k);
+                cost = Math.min(cost, previousRow[j] + EDIT_COST);
+                cost = Math.min(cost, currentRow[j - 1] + EDIT_COST);
+                if (i > 1 && j > 1 && q == key.charAt(j - 2) && query.charAt(i - 2) == k)
+                    cost = Math.min(cost, beforeRow[j - 2] + EDIT_COST);
+                if (i > 1 && isConfusion(query, i - 2, key, j - 1))
+                    cost = Math.min(cost, beforeRow[j - 1] + CONFUSION_COST);
+                if (j > 1 && isConfusion(key, j - 2, query, i - 1))
+                    cost = Math.min(cost, previousRow[j - 2] + CONFUSION_COST);
+                currentRow[j] = cost;
+            }
+            float[] row = beforeRow;
+            beforeRow = previousRow;
+            previousRow = currentRow;
+            currentRow = row;
+        }
+        return previousRow[keyLength];
+    }
+
+    int indexSize() {
+        return entries.length;
+    }
+
+    private static float substitutionCost(char a, char b) {
+        if (a == b) return 0;
+        if (a >= TABLE_SIZE || b >= TABLE_SIZE) return EDIT_COST;
+        return SUBSTITUTION_COSTS[a * TABLE_SIZE + b];
+    }
+
+    // Whether the two letters of pair at pairStart were read for the single letter of
+    // single at singleIndex, or the other way round.
+    private static boolean isConfusion(String pair, int pairStart, String single, int singleIndex) {
+        char first = pair.charAt(pairStart);
+        char second = pair.charAt(pairStart + 1);
+        char letter = single.charAt(singleIndex);
+        for (String[] confusion : CONFUSIONS) {
+            if (isPair(confusion[0], first, second) && isLetter(confusion[1], letter)) return true;
+            if (isPair(confusion[1], first, second) && isLetter(confusion[0], letter)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isPair(String text, char first, char second) {
+        return text.length() == 2 && text.charAt(0) == first && text.charAt(1) == second;
+    }
+
+    private static boolean isLetter(String text, char letter) {
+        return text.length() == 1 && text.charAt(0) == letter;
+    }
+
+    private static boolean isIndexed(String key) {
+        int length = key.length();
+        if (length < MIN_LENGTH || length > MAX_LENGTH) return false;
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c >= TABLE_SIZE || c == ' ') return false;
+        }
+        return true;
+    }
+
+    private static long entry(long hash, int index) {
+        return hash << 32 | index;
+    }
+
+    private static long hash(char[] text, int length, int skip) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < length; i++) {
+            if (i == skip) continue;
+            hash ^= text[i];
+            hash *= FNV_PRIME;
+        }
+        return (hash ^ hash >>> 32) & 0x7fffffffL;
+    }
+}
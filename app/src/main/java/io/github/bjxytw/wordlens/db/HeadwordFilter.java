@@ -0,0 +1,154 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+final class HeadwordFilter {
+    private static final String TAG = "HeadwordFilter";
+    private static final String SQL_HEADWORDS = "SELECT word_key, word FROM items";
+    private static final String SQL_FORMS = "SELECT form FROM inflections";
+    private static final int MAGIC = 0x574c4246;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 20;
+    private static final int BITS_PER_WORD = 16;
+    private static final int HASH_COUNT = 11;
+
+    private final ByteBuffer bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    private HeadwordFilter(ByteBuffer bits, int bitCount, int hashCount) {
+        this.bits = bits;
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+    }
+
+    // Builds the filter unless a current one exists. Returns whether it was built.
+    static boolean buildIfStale(File file, SQLiteDatabase database) throws IOException {
+        if (load(file, DictionaryUpdater.readDataVersion(database)) != null) return false;
+        build(database, file);
+        return true;
+    }
+
+    static HeadwordFilter load(File file, int dataVersion) {
+        if (!file.exists()) return null;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE
+                    || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                Log.w(TAG, "Invalid headword filter.");
+                return null;
+            }
+            if (buffer.getInt(8) != dataVersion) {
+                Log.w(TAG, "Stale headword filter.");
+                return null;
+            }
+            int bitCount = buffer.getInt(12);
+            int hashCount = buffer.getInt(16);
+            if (bitCount <= 0 || buffer.capacity() < HEADER_SIZE + wordCount(bitCount) * 8L) {
+                Log.w(TAG, "Truncated headword filter.");
+                return null;
+            }
+            return new HeadwordFilter(buffer, bitCount, hashCount);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not load headword filter.", e);
+            return null;
+        }
+    }
+
+    static void build(SQLiteDatabase database, File file) throws IOException {
+        Set<String> keys = new HashSet<>();
+        try (Cursor headwords = database.rawQuery(SQL_HEADWORDS, null);
+             Cursor forms = database.rawQuery(SQL_FORMS, null)) {
+            while (headwords.moveToNext()) {
+                String key = headwords.getString(0);
+                String word = headwords.getString(1);
+                if (key != null) keys.add(key);
+                if (word != null) keys.add(DictionarySearch.normalize(word));
+            }
+            while (forms.moveToNext())
+                keys.add(forms.getString(0));
+        }
+        write(keys, DictionaryUpdater.readDataVersion(database), file);
+        Log.i(TAG, "Built headword filter: " + keys.size() + " keys, " + file.length() + " bytes.");
+    }
+
+    static void write(Collection<String> keys, int dataVersion, File file) throws IOException {
+        int bitCount = Math.max(keys.size(), 1) * BITS_PER_WORD;
+        long[] words = new long[wordCount(bitCount)];
+        for (String key : keys) add(words, bitCount, key);
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(dataVersion);
+            output.writeInt(bitCount);
+            output.writeInt(HASH_COUNT);
+            for (long word : words) output.writeLong(word);
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile);
+        }
+    }
+
+    boolean mightContain(CharSequence word) {
+        long hash = hash(word);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            int combined = hash1 + i * hash2;
+            if (combined < 0) combined = ~combined;
+            int bit = combined % bitCount;
+            long value = bits.getLong(HEADER_SIZE + (bit >>> 6) * 8);
+            if ((value & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    private static void add(long[] words, int bitCount, CharSequence word) {
+        long hash = hash(word);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= HASH_COUNT; i++) {
+            int combined = hash1 + i * hash2;
+            if (combined < 0) combined = ~combined;
+            int bit = combined % bitCount;
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private static long hash(CharSequence word) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash ^= word.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int wordCount(int bitCount) {
+        return (bitCount + 63) >>> 6;
+    }
+}
@@ -0,0 +1,5 @@
+package io.github.bjxytw.wordlens.db;
+
+interface HeadwordIndex {
+    long[] findRows(CharSequence key);
+}
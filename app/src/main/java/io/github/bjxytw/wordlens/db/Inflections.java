@@ -0,0 +1,125 @@
+package io.github.bjxytw.wordlens.db;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+final class Inflections {
+    private static final String[] SUFFIXES = {"s", "es", "ing", "ed", "er", "est"};
+    private static final String[] Y_SUFFIXES = {"ied", "ies", "ier", "iest"};
+    private static final String[] DOUBLING_SUFFIXES = {"ing", "ed", "er", "est"};
+
+    private Inflections() {}
+
+    static Map<String, String> build(Collection<String> headwords, Map<String, String> irregularForms) {
+        Set<String> words = new HashSet<>(headwords);
+        Map<String, String> forms = new HashMap<>();
+        List<String> generated = new ArrayList<>();
+        SuffixCandidates suffixes = new SuffixCandidates();
+        HeadwordSink sink = new HeadwordSink(words);
+        for (String base : words) {
+            // Compounds such as "x-ray" or "look up" inflect on their last run of letters.
+            int segment = lastSegment(base);
+            if (segment < 0) continue;
+            generated.clear();
+            generateForms(base, segment, generated);
+            for (String form : generated) {
+                if (words.contains(form) || forms.containsKey(form)) continue;
+                String resolved = sink.resolve(suffixes, form);
+                if (resolved != null) forms.put(form, resolved);
+            }
+        }
+
+        for (Map.Entry<String, String> irregular : irregularForms.entrySet()) {
+            String form = irregular.getKey();
+            String base = irregular.getValue();
+            if (words.contains(base) && !words.contains(form)
+                    && !forms.containsKey(form) && sink.resolve(suffixes, form) == null)
+                forms.put(form, base);
+        }
+        return forms;
+    }
+
+    static Map<String, String> readIrregularForms(InputStream input) throws IOException {
+        Map<String, String> forms = new HashMap<>();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(input, Charset.forName("UTF-8")));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] columns = line.split("\\s+");
+            if (columns.length < 2) continue;
+            String base = DictionarySearch.normalize(columns[0]);
+            for (int i = 1; i < columns.length; i++)
+                forms.put(DictionarySearch.normalize(columns[i]), base);
+        }
+        return forms;
+    }
+
+    private static void generateForms(String base, int segment, List<String> forms) {
+        int size = base.length();
+        char last = base.charAt(size - 1);
+        for (String suffix : SUFFIXES) forms.add(base + suffix);
+
+        if (size - segment > 1) {
+            String stem = base.substring(0, size - 1);
+            if (last == 'e') {
+                for (String suffix : DOUBLING_SUFFIXES) forms.add(stem + suffix);
+            } else if (last == 'y') {
+                for (String suffix : Y_SUFFIXES) forms.add(stem + suffix);
+            }
+        }
+        if (!isVowel(last)) {
+            for (String suffix : DOUBLING_SUFFIXES) forms.add(base + last + suffix);
+        }
+    }
+
+    // Returns the start of the trailing run of Latin letters, or -1 when the word does not
+    // end in one.
+    private static int lastSegment(String word) {
+        int start = word.length();
+        while (start > 0 && isLatinLetter(word.charAt(start - 1))) start--;
+        return start < word.length() ? start : -1;
+    }
+
+    private static boolean isLatinLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '\u00df' && c <= '\u024f' && Character.isLetter(c));
+    }
+
+    private static boolean isVowel(char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+
+    private static final class HeadwordSink implements SuffixCandidates.Sink {
+        private final Set<String> headwords;
+        private String result;
+
+        HeadwordSink(Set<String> headwords) {
+            this.headwords = headwords;
+        }
+
+        String resolve(SuffixCandidates suffixes, CharSequence word) {
+            result = null;
+            suffixes.forEach(word, this);
+            return result;
+        }
+
+        @Override
+        public boolean accept(char[] buffer, int length) {
+            String candidate = new String(buffer, 0, length);
+            if (!headwords.contains(candidate)) return false;
+            result = candidate;
+            return true;
+        }
+    }
+}
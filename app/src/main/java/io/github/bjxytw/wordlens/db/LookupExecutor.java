@@ -0,0 +1,337 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import io.github.bjxytw.wordlens.data.DictionaryData;
+
+public class LookupExecutor {
+    private static final String TAG = "LookupExecutor";
+    private static final String UPDATE_THREAD_NAME = "DictionaryUpdate";
+    private final ExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicIntegerArray generations = new AtomicIntegerArray(Slot.values().length);
+    private final Future<?>[] futures = new Future<?>[Slot.values().length];
+    private final FutureTask<Boolean> ready;
+    private DictionarySearch dictionary;
+    private Callback<PhraseMatcher> phraseMatcherCallback;
+    private volatile Thread updateThread;
+    private volatile boolean shutdown;
+
+    public enum Slot {
+        ENTRY,
+        LINKS,
+        SUGGEST
+    }
+
+    public interface Lookup<T> {
+        T run(DictionarySearch dictionary);
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    public LookupExecutor(final Context context, final DatabaseHelper.InstallListener installListener,
+                          final DictionarySearch.ReverseIndexListener reverseIndexListener) {
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, TAG);
+            }
+        });
+        ready = new FutureTask<>(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                dictionary = new DictionarySearch(context.getApplicationContext(),
+                        installListener == null ? null : new MainThreadInstallListener(installListener));
+                return dictionary.isAvailable();
+            }
+        });
+        executor.execute(ready);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (dictionary != null && dictionary.isAvailable())
+                    startUpdate(dictionary, reverseIndexListener == null
+                            ? null : new MainThreadReverseIndexListener(reverseIndexListener));
+            }
+        });
+    }
+
+    public Future<Boolean> ready() {
+        return ready;
+    }
+
+    public void whenReady(final Callback<Boolean> callback) {
+        if (shutdown) return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean available;
+                try {
+                    available = ready.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.e(TAG, "Dictionary open failed.", e);
+                    available = false;
+                }
+                final boolean result = available;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!shutdown) callback.onResult(result);
+                    }
+                });
+            }
+        });
+    }
+
+    public void loadPhraseMatcher(final Callback<PhraseMatcher> callback) {
+        if (shutdown) return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (dictionary == null) return;
+                PhraseMatcher matcher = dictionary.phraseMatcher();
+                if (matcher != null) deliverPhraseMatcher(matcher, callback);
+                else phraseMatcherCallback = callback;
+            }
+        });
+    }
+
+    private void deliverPhraseMatcher(final PhraseMatcher matcher,
+                                      final Callback<PhraseMatcher> callback) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!shutdown) callback.onResult(matcher);
+            }
+        });
+    }
+
+    public void search(Slot slot, final String word, Callback<DictionaryData> callback) {
+        submit(slot, new Lookup<DictionaryData>() {
+            @Override
+            public DictionaryData run(DictionarySearch dictionary) {
+                return dictionary.search(word);
+            }
+        }, callback);
+    }
+
+    public void searchRow(Slot slot, final long row, Callback<DictionaryData> callback) {
+        submit(slot, new Lookup<DictionaryData>() {
+            @Override
+            public DictionaryData run(DictionarySearch dictionary) {
+                return dictionary.searchRow(row);
+            }
+        }, callback);
+    }
+
+    public void suggest(final String prefix, final int limit, Callback<List<String>> callback) {
+        submit(Slot.SUGGEST, new Lookup<List<String>>() {
+            @Override
+            public List<String> run(DictionarySearch dictionary) {
+                return dictionary.suggest(prefix, limit);
+            }
+        }, callback);
+    }
+
+    public void searchReverse(final String query, final int limit,
+                              Callback<List<DictionaryData>> callback) {
+        submit(Slot.SUGGEST, new Lookup<List<DictionaryData>>() {
+            @Override
+            public List<DictionaryData> run(DictionarySearch dictionary) {
+                return dictionary.searchReverse(query, limit);
+            }
+        }, callback);
+    }
+
+    public void searchAll(Slot slot, final Collection<String> words,
+                          Callback<Map<String, DictionaryData>> callback) {
+        submit(slot, new Lookup<Map<String, DictionaryData>>() {
+            @Override
+            public Map<String, DictionaryData> run(DictionarySearch dictionary) {
+                return dictionary.searchAll(words);
+            }
+        }, callback);
+    }
+
+    public <T> void submit(final Slot slot, final Lookup<T> lookup, final Callback<T> callback) {
+        if (shutdown) return;
+        final int index = slot.ordinal();
+        final int generation = generations.incrementAndGet(index);
+        if (futures[index] != null) futures[index].cancel(false);
+
+        futures[index] = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != generations.get(index) || dictionary == null) return;
+                final T result;
+                try {
+                    result = lookup.run(dictionary);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Lookup failed.", e);
+                    return;
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!shutdown && generation == generations.get(index))
+                            callback.onResult(result);
+                    }
+                });
+            }
+        });
+    }
+
+    // The headword searches are built first so suggestions are ready soon after open. Delta
+    // packs are applied next, then any derived file still missing is built; lookups use SQL
+    // until onDatabaseUpdated loads them. The reverse index, which packs reset, is built or
+    // resumed last on the same thread.
+    private void startUpdate(final DictionarySearch search,
+                             final DictionarySearch.ReverseIndexListener reverseIndexListener) {
+        final DictionaryUpdater updater = search.createUpdater();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                installHeadwordSearch(search);
+                boolean updated = false;
+                try {
+                    updated = updater.update() > 0;
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Dictionary update failed.", e);
+                }
+                if (shutdown) return;
+                boolean built = false;
+                try {
+                    built = search.buildDerivedFiles();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Derived file build failed.", e);
+                }
+                if (shutdown) return;
+                if (updated || built) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (dictionary != null) dictionary.onDatabaseUpdated();
+                        }
+                    });
+                }
+                if (updated) installHeadwordSearch(search);
+                if (shutdown) return;
+                try {
+                    search.buildReverseIndex(reverseIndexListener);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Reverse index build failed.", e);
+                }
+            }
+        }, UPDATE_THREAD_NAME);
+        updateThread = thread;
+        thread.start();
+    }
+
+    private void installHeadwordSearch(DictionarySearch search) {
+        if (shutdown) return;
+        final DictionarySearch.HeadwordSearch headwordSearch;
+        try {
+            headwordSearch = search.buildHeadwordSearch();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Headword search build failed.", e);
+            return;
+        }
+        if (shutdown) return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (dictionary == null) return;
+                dictionary.setHeadwordSearch(headwordSearch);
+                if (phraseMatcherCallback != null) {
+                    deliverPhraseMatcher(headwordSearch.phraseMatcher, phraseMatcherCallback);
+                    phraseMatcherCallback = null;
+                }
+            }
+        });
+    }
+
+    public void cancel(Slot slot) {
+        int index = slot.ordinal();
+        generations.incrementAndGet(index);
+        if (futures[index] != null) {
+            futures[index].cancel(false);
+            futures[index] = null;
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        if (updateThread != null) updateThread.interrupt();
+        for (Slot slot : Slot.values()) cancel(slot);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (dictionary != null) dictionary.close();
+                dictionary = null;
+            }
+        });
+        executor.shutdown();
+    }
+
+    private class MainThreadInstallListener implements DatabaseHelper.InstallListener {
+        private final DatabaseHelper.InstallListener listener;
+
+        MainThreadInstallListener(DatabaseHelper.InstallListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onInstallProgress(final long installedBytes, final long totalBytes) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!shutdown) listener.onInstallProgress(installedBytes, totalBytes);
+                }
+            });
+        }
+    }
+
+    private class MainThreadReverseIndexListener implements DictionarySearch.ReverseIndexListener {
+        private final DictionarySearch.ReverseIndexListener listener;
+
+        MainThreadReverseIndexListener(DictionarySearch.ReverseIndexListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onIndexProgress(final int indexedRows, final int totalRows) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!shutdown) listener.onIndexProgress(indexedRows, totalRows);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+final class MappedHeadwordIndex implements HeadwordIndex {
+    private static final String TAG = "MappedHeadwordIndex";
+    private static final String SQL_HEADWORDS =
+            "SELECT rowid, word_key FROM items WHERE word_key IS NOT NULL ORDER BY rowid";
+    private static final int MAGIC = 0x574c4849;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int BLOCK_SIZE = 16;
+
+    private final ByteBuffer buffer;
+    private final int keyCount;
+    private final int blockCount;
+    private final int blockTableOffset;
+    private char[] key = new char[64];
+    private int keyLength;
+    private int position;
+
+    private MappedHeadwordIndex(ByteBuffer buffer, int keyCount, int blockCount, int blockTableOffset) {
+        this.buffer = buffer;
+        this.keyCount = keyCount;
+        this.blockCount = blockCount;
+        this.blockTableOffset = blockTableOffset;
+    }
+
+    // Builds the index unless a current one exists. Returns whether it was built.
+    static boolean buildIfStale(File file, SQLiteDatabase database) throws IOException {
+        if (load(file, DictionaryUpdater.readDataVersion(database)) != null) return false;
+        build(database, file);
+        return true;
+    }
+
+    static MappedHeadwordIndex load(File file, int dataVersion) {
+        if (!file.exists()) return null;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE
+                    || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+                Log.w(TAG, "Invalid headword index.");
+                return null;
+            }
+            if (buffer.getInt(8) != dataVersion) {
+                Log.w(TAG, "Stale headword index.");
+                return null;
+            }
+            int keyCount = buffer.getInt(12);
+            int blockCount = buffer.getInt(16);
+            int blockTableOffset = buffer.getInt(20);
+            if (blockTableOffset < HEADER_SIZE
+                    || buffer.capacity() < blockTableOffset + blockCount * 4L) {
+                Log.w(TAG, "Truncated headword index.");
+                return null;
+            }
+            return new MappedHeadwordIndex(buffer, keyCount, blockCount, blockTableOffset);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not load headword index.", e);
+            return null;
+        }
+    }
+
+    static void build(SQLiteDatabase database, File file) throws IOException {
+        SortedMap<String, List<Long>> entries = new TreeMap<>();
+        try (Cursor cursor = database.rawQuery(SQL_HEADWORDS, null)) {
+            while (cursor.moveToNext()) {
+                String key = cursor.getString(1);
+                List<Long> ids = entries.get(key);
+                if (ids == null) {
+                    ids = new ArrayList<>(1);
+                    entries.put(key, ids);
+                }
+                ids.add(cursor.getLong(0));
+            }
+        }
+
+        List<String> keys = new ArrayList<>(entries.size());
+        List<long[]> rows = new ArrayList<>(entries.size());
+        for (Map.Entry<String, List<Long>> entry : entries.entrySet()) {
+            long[] ids = new long[entry.getValue().size()];
+            for (int i = 0; i < ids.length; i++) ids[i] = entry.getValue().get(i);
+            keys.add(entry.getKey());
+            rows.add(ids);
+        }
+        write(keys, rows, DictionaryUpdater.readDataVersion(database), file);
+        Log.i(TAG, "Built headword index: " + keys.size() + " keys, " + file.length() + " bytes.");
+    }
+
+    static void write(List<String> keys, List<long[]> rows, int dataVersion, File file)
+            throws IOException {
+        int blockCount = (keys.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int[] blockOffsets = new int[blockCount];
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        String previous = "";
+        for (int i = 0; i < keys.size(); i++) {
+            String current = keys.get(i);
+            int shared = 0;
+            if (i % BLOCK_SIZE == 0) {
+                blockOffsets[i / BLOCK_SIZE] = HEADER_SIZE + data.size();
+            } else {
+                int limit = Math.min(previous.length(), current.length());
+                while (shared < limit && previous.charAt(shared) == current.charAt(shared)) shared++;
+            }
+            writeVarint(data, shared);
+            writeVarint(data, current.length() - shared);
+            for (int j = shared; j < current.length(); j++) writeVarint(data, current.charAt(j));
+
+            long[] ids = rows.get(i);
+            writeVarint(data, ids.length);
+            long last = 0;
+            for (long id : ids) {
+                writeVarint(data, id - last);
+                last = id;
+            }
+            previous = current;
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(dataVersion);
+            output.writeInt(keys.size());
+            output.writeInt(blockCount);
+            output.writeInt(HEADER_SIZE + data.size());
+            data.writeTo(output);
+            for (int offset : blockOffsets) output.writeInt(offset);
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile);
+        }
+    }
+
+    int size() {
+        return keyCount;
+    }
+
+    @Override
+    public long[] findRows(CharSequence query) {
+        int block = findBlock(query);
+        if (block < 0) return null;
+
+        position = buffer.getInt(blockTableOffset + block * 4);
+        keyLength = 0;
+        int end = Math.min(keyCount, (block + 1) * BLOCK_SIZE);
+        for (int i = block * BLOCK_SIZE; i < end; i++) {
+            readKey();
+            int result = compareKey(query);
+            if (result == 0) return readRows();
+            if (result > 0) return null;
+            skipRows();
+        }
+        return null;
+    }
+
+    private int findBlock(CharSequence query) {
+        int low = 0;
+        int high = blockCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            position = buffer.getInt(blockTableOffset + middle * 4);
+            keyLength = 0;
+            readKey();
+            if (compareKey(query) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private void readKey() {
+        int shared = readVarint();
+        int suffix = readVarint();
+        int length = shared + suffix;
+        if (key.length < length) key = Arrays.copyOf(key, Math.max(length, key.length * 2));
+        for (int i = shared; i < length; i++) key[i] = (char) readVarint();
+        keyLength = length;
+    }
+
+    private long[] readRows() {
+        long[] rows = new long[readVarint()];
+        long last = 0;
+        for (int i = 0; i < rows.length; i++) {
+            last += readVarintLong();
+            rows[i] = last;
+        }
+        return rows;
+    }
+
+    private void skipRows() {
+        int count = readVarint();
+        for (int i = 0; i < count; i++) readVarintLong();
+    }
+
+    private int compareKey(CharSequence query) {
+        int limit = Math.min(keyLength, query.length());
+        for (int i = 0; i < limit; i++) {
+            int result = key[i] - query.charAt(i);
+            if (result != 0) return result;
+        }
+        return keyLength - query.length();
+    }
+
+    private int readVarint() {
+        return (int) readVarintLong();
+    }
+
+    private long readVarintLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position++);
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7fL) != 0) {
+            output.write((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+}
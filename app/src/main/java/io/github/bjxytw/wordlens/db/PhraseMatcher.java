@@ -0,0 +1,192 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class PhraseMatcher {
+    private static final String TAG = "PhraseMatcher";
+    private static final int MAX_TOKENS = 8;
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final Map<String, Integer> tokenIds = new HashMap<>();
+    private final int[] childStarts;
+    private final int[] childTokens;
+    private final int[] childNodes;
+    private final int[] failures;
+    private final int[] outputs;
+    private final int[] lengths;
+    private int[] lineTokens = new int[16];
+    private String[] lineTexts = new String[16];
+
+    // Builds an Aho-Corasick automaton over the token sequences of the multi-word keys, so a
+    // line of words is scanned once for every expression in it.
+    PhraseMatcher(String[] keys) {
+        long startTime = System.currentTimeMillis();
+        List<Map<Integer, Integer>> children = new ArrayList<>();
+        List<Integer> patternLengths = new ArrayList<>();
+        children.add(new HashMap<Integer, Integer>());
+        patternLengths.add(0);
+        int patterns = 0;
+
+        for (String key : keys) {
+            if (key.indexOf(' ') < 0) continue;
+            String[] words = key.split(" ");
+            if (words.length > MAX_TOKENS) continue;
+            int node = ROOT;
+            int length = 0;
+            for (String word : words) {
+                if (word.isEmpty()) continue;
+                Integer token = tokenIds.get(word);
+                if (token == null) {
+                    token = tokenIds.size();
+                    tokenIds.put(word, token);
+                }
+                Integer child = children.get(node).get(token);
+                if (child == null) {
+                    child = children.size();
+                    children.add(new HashMap<Integer, Integer>());
+                    patternLengths.add(0);
+                    children.get(node).put(token, child);
+                }
+                node = child;
+                length++;
+            }
+            if (length > 1) {
+                patternLengths.set(node, length);
+                patterns++;
+            }
+        }
+
+        int nodeCount = children.size();
+        childStarts = new int[nodeCount + 1];
+        lengths = new int[nodeCount];
+        int edgeCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            childStarts[node] = edgeCount;
+            edgeCount += children.get(node).size();
+            lengths[node] = patternLengths.get(node);
+        }
+        childStarts[nodeCount] = edgeCount;
+        childTokens = new int[edgeCount];
+        childNodes = new int[edgeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            int start = childStarts[node];
+            int[] tokens = new int[children.get(node).size()];
+            int i = 0;
+            for (int token : children.get(node).keySet()) tokens[i++] = token;
+            Arrays.sort(tokens);
+            for (i = 0; i < tokens.length; i++) {
+                childTokens[start + i] = tokens[i];
+                childNodes[start + i] = children.get(node).get(tokens[i]);
+            }
+        }
+
+        failures = new int[nodeCount];
+        outputs = new int[nodeCount];
+        outputs[ROOT] = NONE;
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = ROOT;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int edge = childStarts[node]; edge < childStarts[node + 1]; edge++) {
+                int child = childNodes[edge];
+                int failure = ROOT;
+                if (node != ROOT) {
+                    failure = failures[node];
+                    while (failure != ROOT && next(failure, childTokens[edge]) == NONE)
+                        failure = failures[failure];
+                    int next = next(failure, childTokens[edge]);
+                    failure = next == NONE ? ROOT : next;
+                }
+                failures[child] = failure;
+                outputs[child] = lengths[failure] > 0 ? failure : outputs[failure];
+                queue[tail++] = child;
+            }
+        }
+        Log.i(TAG, "Built phrase matcher: " + patterns + " expressions, " + nodeCount
+                + " nodes in " + (System.currentTimeMillis() - startTime) + " ms.");
+    }
+
+    // Returns the longest expression in the line that covers the element at cursorIndex,
+    // or null when no expression covers it.
+    public String findExpression(List<String> elements, int cursorIndex) {
+        int count = elements.size();
+        if (cursorIndex < 0 || cursorIndex >= count) return null;
+        if (lineTokens.length < count) {
+            lineTokens = new int[count * 2];
+            lineTexts = new String[count * 2];
+        }
+
+        int end = Math.min(count, cursorIndex + MAX_TOKENS);
+        int start = Math.max(0, cursorIndex - MAX_TOKENS + 1);
+        for (int i = start; i < end; i++) {
+            String text = TokenNormalizer.trim(elements.get(i));
+            text = text == null ? null : DictionarySearch.normalize(text);
+            Integer token = text == null ? null : tokenIds.get(text);
+            if (token == null && text != null) {
+                String folded = TokenNormalizer.fold(text);
+                if (folded != null && !folded.equals(text)) {
+                    token = tokenIds.get(folded);
+                    if (token != null) text = folded;
+                }
+            }
+            lineTexts[i] = text;
+            lineTokens[i] = token == null ? NONE : token;
+        }
+
+        int bestStart = NONE;
+        int bestEnd = NONE;
+        int state = ROOT;
+        for (int i = start; i < end; i++) {
+            int token = lineTokens[i];
+            if (token == NONE) {
+                state = ROOT;
+                continue;
+            }
+            while (state != ROOT && next(state, token) == NONE) state = failures[state];
+            int next = next(state, token);
+            state = next == NONE ? ROOT : next;
+            if (i < cursorIndex) continue;
+
+            // Suffix outputs get shorter along the chain, so their starts only move right.
+            for (int node = lengths[state] > 0 ? state : outputs[state]; node != NONE; node = outputs[node]) {
+                int matchStart = i - lengths[node] + 1;
+                if (matchStart > cursorIndex) break;
+                if (bestStart == NONE || i + 1 - matchStart > bestEnd - bestStart) {
+                    bestStart = matchStart;
+                    bestEnd = i + 1;
+                }
+            }
+        }
+        if (bestStart == NONE) return null;
+
+        StringBuilder expression = new StringBuilder(lineTexts[bestStart]);
+        for (int i = bestStart + 1; i < bestEnd; i++) expression.append(' ').append(lineTexts[i]);
+        return expression.toString();
+    }
+
+    int size() {
+        return lengths.length;
+    }
+
+    private int next(int node, int token) {
+        int low = childStarts[node];
+        int high = childStarts[node + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = childTokens[middle];
+            if (value < token) low = middle + 1;
+            else if (value > token) high = middle - 1;
+            else return childNodes[middle];
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,145 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+final class PrefixSearch {
+    private static final String TAG = "PrefixSearch";
+    private static final String SQL_HEADWORDS =
+            "SELECT word_key, word, level FROM items WHERE word_key IS NOT NULL ORDER BY rowid";
+    private static final int UNRANKED = Integer.MAX_VALUE;
+
+    private final String[] keys;
+    private final String[] words;
+    private final int[] ranks;
+    private final StringBuilder query = new StringBuilder();
+    private int[] rangeStarts = new int[32];
+    private int[] rangeEnds = new int[32];
+
+    PrefixSearch(String[] keys, String[] words, int[] ranks) {
+        this.keys = keys;
+        this.words = words;
+        this.ranks = ranks;
+        rangeStarts[0] = 0;
+        rangeEnds[0] = keys.length;
+    }
+
+    static PrefixSearch build(SQLiteDatabase database) {
+        long startTime = System.currentTimeMillis();
+        Map<String, Integer> ranks = new TreeMap<>();
+        Map<String, String> words = new TreeMap<>();
+        try (Cursor cursor = database.rawQuery(SQL_HEADWORDS, null)) {
+            while (cursor.moveToNext()) {
+                String key = cursor.getString(0);
+                int level = cursor.isNull(2) ? 0 : cursor.getInt(2);
+                int rank = level > 0 ? level : UNRANKED;
+                Integer previous = ranks.get(key);
+                if (previous == null) {
+                    words.put(key, cursor.getString(1));
+                    ranks.put(key, rank);
+                } else if (rank < previous) {
+                    ranks.put(key, rank);
+                }
+            }
+        }
+
+        String[] keyArray = ranks.keySet().toArray(new String[0]);
+        String[] wordArray = new String[keyArray.length];
+        int[] rankArray = new int[keyArray.length];
+        for (int i = 0; i < keyArray.length; i++) {
+            wordArray[i] = words.get(keyArray[i]);
+            rankArray[i] = ranks.get(keyArray[i]);
+        }
+        Log.i(TAG, "Built prefix search: " + keyArray.length + " headwords in "
+                + (System.currentTimeMillis() - startTime) + " ms.");
+        return new PrefixSearch(keyArray, wordArray, rankArray);
+    }
+
+    List<String> suggest(CharSequence prefix, int limit) {
+        int depth = extend(prefix);
+        List<String> suggestions = new ArrayList<>(Math.max(limit, 0));
+        if (depth < prefix.length() || limit <= 0 || prefix.length() == 0) return suggestions;
+
+        int start = rangeStarts[depth];
+        int end = rangeEnds[depth];
+        int[] best = new int[Math.min(limit, end - start)];
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (count == best.length && !isBetter(i, best[count - 1])) continue;
+            int position = count < best.length ? count++ : count - 1;
+            while (position > 0 && isBetter(i, best[position - 1])) {
+                best[position] = best[position - 1];
+                position--;
+            }
+            best[position] = i;
+        }
+        for (int i = 0; i < count; i++) suggestions.add(words[best[i]]);
+        return suggestions;
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    String[] keys() {
+        return keys;
+    }
+
+    int[] ranks() {
+        return ranks;
+    }
+
+    // Keeps one key range per prefix length, so a query that extends the previous one
+    // only narrows the deepest range instead of searching from the root.
+    private int extend(CharSequence prefix) {
+        int common = 0;
+        int limit = Math.min(query.length(), prefix.length());
+        while (common < limit && query.charAt(common) == prefix.charAt(common)) common++;
+        query.setLength(common);
+
+        while (query.length() < prefix.length()) {
+            int depth = query.length();
+            int start = rangeStarts[depth];
+            int end = rangeEnds[depth];
+            if (start == end) break;
+
+            char c = prefix.charAt(depth);
+            int childStart = lowerBound(start, end, depth, c);
+            int childEnd = c == Character.MAX_VALUE
+                    ? end : lowerBound(childStart, end, depth, (char) (c + 1));
+            if (depth + 1 == rangeStarts.length) {
+                rangeStarts = Arrays.copyOf(rangeStarts, rangeStarts.length * 2);
+                rangeEnds = Arrays.copyOf(rangeEnds, rangeEnds.length * 2);
+            }
+            rangeStarts[depth + 1] = childStart;
+            rangeEnds[depth + 1] = childEnd;
+            query.append(c);
+        }
+        return query.length();
+    }
+
+    private int lowerBound(int start, int end, int depth, char c) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            String key = keys[middle];
+            if (key.length() <= depth || key.charAt(depth) < c) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private boolean isBetter(int a, int b) {
+        if (ranks[a] != ranks[b]) return ranks[a] < ranks[b];
+        if (keys[a].length() != keys[b].length()) return keys[a].length() < keys[b].length();
+        return a < b;
+    }
+}
@@ -0,0 +1,307 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.File;
+
+final class ReverseIndex {
+    private static final String TAG = "ReverseIndex";
+    private static final String TABLE_MEANS = "means";
+    private static final String TABLE_STATE = "build_state";
+    private static final int BATCH_SIZE = 2000;
+    private static final int SNIPPET_RADIUS = 12;
+    private static final String ELLIPSIS = "…";
+    private static final int RANK_CANDIDATES = 2000;
+
+    // Ranks before the limit by where the query first appears in the tokens and then by their
+    // length, which follow the position and length of the meaning. Only the first matches are
+    // ranked, so common terms do not load the tokens of most of the dictionary.
+    static final String SQL_MATCH = "SELECT docid FROM (SELECT docid, grams FROM " + TABLE_MEANS
+            + " WHERE " + TABLE_MEANS + " MATCH ? LIMIT " + RANK_CANDIDATES + ")"
+            + " ORDER BY instr(' ' || grams || ' ', ?), length(grams) LIMIT ?";
+    private static final String SQL_SOURCE_ROWS =
+            "SELECT rowid, mean FROM items WHERE rowid>? ORDER BY rowid LIMIT " + BATCH_SIZE;
+    private static final String SQL_INSERT =
+            "INSERT OR REPLACE INTO " + TABLE_MEANS + "(docid, grams) VALUES(?, ?)";
+    private static final String SQL_WRITE_STATE =
+            "INSERT OR REPLACE INTO " + TABLE_STATE + "(id, last_row, complete) VALUES(1, ?, ?)";
+
+    private final SQLiteDatabase database;
+
+    private ReverseIndex(SQLiteDatabase database) {
+        this.database = database;
+    }
+
+    static ReverseIndex open(File file) {
+        if (!file.exists()) return null;
+        try {
+            // Without the WAL flag, older releases switch the journal mode back on open and
+            // the lookup thread would wait for the build's transactions.
+            return new ReverseIndex(SQLiteDatabase.openDatabase(file.getPath(), null,
+                    SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING));
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Could not open reverse index.", e);
+            return null;
+        }
+    }
+
+    // Indexes the meanings in batches, committing the last indexed row with each batch so an
+    // interrupted build resumes where it stopped. Returns whether the index is complete.
+    static boolean build(SQLiteDatabase source, File file,
+                         DictionarySearch.ReverseIndexListener listener) {
+        SQLiteDatabase db = openWritable(file);
+        try {
+            long startTime = System.currentTimeMillis();
+            int dataVersion = DictionaryUpdater.readDataVersion(source);
+            if (db.getVersion() != dataVersion) {
+                clear(db);
+                db.setVersion(dataVersion);
+            }
+            int totalRows = countRows(source, "SELECT count(*) FROM items", null);
+            long lastRow = 0;
+            try (Cursor cursor = db.rawQuery("SELECT last_row, complete FROM " + TABLE_STATE, null)) {
+                if (cursor.moveToFirst()) {
+                    if (cursor.getInt(1) != 0) {
+                        if (listener != null) listener.onIndexProgress(totalRows, totalRows);
+                        return true;
+                    }
+                    lastRow = cursor.getLong(0);
+                }
+            }
+
+            int indexedRows = countRows(source, "SELECT count(*) FROM items WHERE rowid<=?",
+                    new String[]{String.valueOf(lastRow)});
+            Log.i(TAG, "Building reverse index from row " + lastRow + ".");
+
+            try (SQLiteStatement insert = db.compileStatement(SQL_INSERT);
+                 SQLiteStatement writeState = db.compileStatement(SQL_WRITE_STATE)) {
+                while (true) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        Log.i(TAG, "Reverse index build paused at row " + lastRow + ".");
+                        return false;
+                    }
+                    int rows = 0;
+                    db.beginTransaction();
+                    try (Cursor cursor = source.rawQuery(SQL_SOURCE_ROWS,
+                            new String[]{String.valueOf(lastRow)})) {
+                        while (cursor.moveToNext()) {
+                            lastRow = cursor.getLong(0);
+                            insert.bindLong(1, lastRow);
+                            insert.bindString(2, tokenize(cursor.isNull(1) ? "" : cursor.getString(1)));
+                            insert.executeInsert();
+                            rows++;
+                        }
+                        writeState.bindLong(1, lastRow);
+                        writeState.bindLong(2, rows < BATCH_SIZE ? 1 : 0);
+                        writeState.executeInsert();
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    indexedRows += rows;
+                    if (listener != null) listener.onIndexProgress(indexedRows, totalRows);
+                    if (rows < BATCH_SIZE) break;
+                }
+            }
+            db.execSQL("INSERT INTO " + TABLE_MEANS + "(" + TABLE_MEANS + ") VALUES('optimize')");
+            Log.i(TAG, "Built reverse index: " + indexedRows + " rows in "
+                    + (System.currentTimeMillis() - startTime) + " ms.");
+            return true;
+        } finally {
+            db.close();
+        }
+    }
+
+    static void reset(File file) {
+        if (!file.exists()) return;
+        SQLiteDatabase db = openWritable(file);
+        try {
+            clear(db);
+        } finally {
+            db.close();
+        }
+    }
+
+    private static void clear(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            db.execSQL("DELETE FROM " + TABLE_MEANS);
+            db.execSQL("DELETE FROM " + TABLE_STATE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    long[] find(String query, int limit) {
+        String expression = matchExpression(query);
+        if (expression == null) return new long[0];
+        try (Cursor cursor = database.rawQuery(SQL_MATCH,
+                new String[]{expression, rankToken(query), String.valueOf(limit)})) {
+            long[] rows = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) rows[i] = cursor.getLong(0);
+            return rows;
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Reverse search failed.", e);
+            return new long[0];
+        }
+    }
+
+    void close() {
+        database.close();
+    }
+
+    private static SQLiteDatabase openWritable(File file) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        db.enableWriteAheadLogging();
+        // The prefix index covers one Japanese character (three UTF-8 bytes) for single
+        // character queries.
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_MEANS
+                + " USING fts4(grams, prefix=\"3\")");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_STATE
+                + "(id INTEGER PRIMARY KEY, last_row INTEGER NOT NULL, complete INTEGER NOT NULL)");
+        return db;
+    }
+
+    private static int countRows(SQLiteDatabase db, String sql, String[] args) {
+        try (Cursor cursor = db.rawQuery(sql, args)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    // The FTS tokenizers on Android do not split Japanese into words, so Japanese runs are
+    // stored as overlapping bigrams plus their last character, and ASCII runs as words.
+    static String tokenize(String text) {
+        StringBuilder tokens = new StringBuilder(text.length() * 3);
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int c = text.codePointAt(i);
+            if (isWordChar(c)) {
+                int end = skipWord(text, i);
+                appendToken(tokens, text.substring(i, end).toLowerCase());
+                i = end;
+            } else if (isGramChar(c)) {
+                int end = skipGrams(text, i);
+                for (int start = i; start < end; start += Character.charCount(text.codePointAt(start))) {
+                    int next = start + Character.charCount(text.codePointAt(start));
+                    int gramEnd = next < end ? next + Character.charCount(text.codePointAt(next)) : next;
+                    appendToken(tokens, text.substring(start, gramEnd));
+                }
+                i = end;
+            } else {
+                i += Character.charCount(c);
+            }
+        }
+        return tokens.toString();
+    }
+
+    // Japanese runs become phrases of their bigrams, which matches them as substrings; a
+    // single character matches as the prefix of a bigram.
+    static String matchExpression(String query) {
+        StringBuilder expression = new StringBuilder();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            int c = query.codePointAt(i);
+            if (isWordChar(c)) {
+                int end = skipWord(query, i);
+                appendToken(expression, query.substring(i, end).toLowerCase());
+                i = end;
+            } else if (isGramChar(c)) {
+                int end = skipGrams(query, i);
+                int second = i + Character.charCount(c);
+                if (second == end) {
+                    appendToken(expression, query.substring(i, end) + "*");
+                } else {
+                    String grams = tokenize(query.substring(i, end));
+                    appendToken(expression, "\"" + grams.substring(0, grams.lastIndexOf(' ')) + "\"");
+                }
+                i = end;
+            } else {
+                i += Character.charCount(c);
+            }
+        }
+        return expression.length() > 0 ? expression.toString() : null;
+    }
+
+    // The first token of the longest run of the query, padded so it only matches at a token
+    // boundary; a single Japanese character matches the start of a bigram.
+    static String rankToken(String query) {
+        String run = longestRun(query);
+        if (run.isEmpty()) return "";
+        if (isWordChar(run.charAt(0))) return " " + run.toLowerCase() + " ";
+        String grams = tokenize(run);
+        int end = grams.indexOf(' ');
+        return end < 0 ? " " + grams : " " + grams.substring(0, end) + " ";
+    }
+
+    // Cuts the meaning around the first occurrence of the longest run of the query.
+    static String snippet(String mean, String query) {
+        String text = mean.replace('\n', ' ');
+        String run = longestRun(query);
+        int position = run.isEmpty() ? -1 : text.toLowerCase().indexOf(run.toLowerCase());
+        if (position < 0) position = 0;
+
+        int start = Math.max(position - SNIPPET_RADIUS, 0);
+        int end = Math.min(position + run.length() + SNIPPET_RADIUS, text.length());
+        if (start > 0 && Character.isLowSurrogate(text.charAt(start))) start--;
+        if (end < text.length() && Character.isLowSurrogate(text.charAt(end))) end++;
+        return (start > 0 ? ELLIPSIS : "") + text.substring(start, end)
+                + (end < text.length() ? ELLIPSIS : "");
+    }
+
+    static int matchPosition(String mean, String query) {
+        String run = longestRun(query);
+        int position = run.isEmpty() ? -1 : mean.toLowerCase().indexOf(run.toLowerCase());
+        return position < 0 ? Integer.MAX_VALUE : position;
+    }
+
+    private static String longestRun(String query) {
+        String longest = "";
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            int c = query.codePointAt(i);
+            int end = isWordChar(c) ? skipWord(query, i)
+                    : isGramChar(c) ? skipGrams(query, i) : i + Character.charCount(c);
+            if ((isWordChar(c) || isGramChar(c)) && end - i > longest.length())
+                longest = query.substring(i, end);
+            i = end;
+        }
+        return longest;
+    }
+
+    private static int skipWord(String text, int start) {
+        int end = start;
+        while (end < text.length() && isWordChar(text.charAt(end))) end++;
+        return end;
+    }
+
+    private static int skipGrams(String text, int start) {
+        int end = start;
+        while (end < text.length()) {
+            int c = text.codePointAt(end);
+            if (!isGramChar(c)) break;
+            end += Character.charCount(c);
+        }
+        return end;
+    }
+
+    private static void appendToken(StringBuilder tokens, String token) {
+        if (tokens.length() > 0) tokens.append(' ');
+        tokens.append(token);
+    }
+
+    private static boolean isWordChar(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isGramChar(int c) {
+        return c >= 0x80 && Character.isLetterOrDigit(c);
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.bjxytw.wordlens.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+final class SqlHeadwordIndex implements HeadwordIndex {
+    static final String SQL_FIND_ROWS = "SELECT rowid FROM items WHERE word_key=? ORDER BY rowid";
+    private final SQLiteDatabase database;
+
+    SqlHeadwordIndex(SQLiteDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public long[] findRows(CharSequence key) {
+        try (Cursor cursor = database.rawQuery(SQL_FIND_ROWS, new String[]{key.toString()})) {
+            int count = cursor.getCount();
+            if (count == 0) return null;
+            long[] rows = new long[count];
+            for (int i = 0; cursor.moveToNext(); i++) rows[i] = cursor.getLong(0);
+            return rows;
+        }
+    }
+}
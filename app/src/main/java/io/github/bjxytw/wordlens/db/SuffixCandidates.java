@@ -0,0 +1,103 @@
+package io.github.bjxytw.wordlens.db;
+
+final class SuffixCandidates {
+    private static final int RULE_NONE = 0;
+    private static final int RULE_Y = 1;
+    private static final int RULE_DOUBLING = 2;
+    private static final int RULE_E = 3;
+    private static final int RULE_STRIP = 4;
+    private static final Node ROOT = new Node();
+
+    static {
+        addSuffix("ied", RULE_Y);
+        addSuffix("ies", RULE_Y);
+        addSuffix("ier", RULE_Y);
+        addSuffix("iest", RULE_Y);
+        addSuffix("ing", RULE_DOUBLING);
+        addSuffix("ed", RULE_DOUBLING);
+        addSuffix("er", RULE_DOUBLING);
+        addSuffix("est", RULE_DOUBLING);
+        addSuffix("es", RULE_E);
+        addSuffix("s", RULE_STRIP);
+    }
+
+    private char[] buffer = new char[32];
+
+    interface Sink {
+        boolean accept(char[] buffer, int length);
+    }
+
+    boolean forEach(CharSequence word, Sink sink) {
+        int length = word.length();
+        Node node = ROOT;
+        int rule = RULE_NONE;
+        int suffixSize = 0;
+        for (int depth = 1; depth < length; depth++) {
+            node = node.child(word.charAt(length - depth));
+            if (node == null) break;
+            if (node.rule != RULE_NONE) {
+                rule = node.rule;
+                suffixSize = depth;
+            }
+        }
+        if (rule == RULE_NONE) return false;
+
+        int stemSize = length - suffixSize;
+        ensureCapacity(length + 1);
+        for (int i = 0; i < stemSize; i++) buffer[i] = word.charAt(i);
+
+        switch (rule) {
+            case RULE_Y:
+                buffer[stemSize] = 'y';
+                return sink.accept(buffer, stemSize + 1);
+            case RULE_DOUBLING:
+                if (stemSize > 2 && buffer[stemSize - 1] == buffer[stemSize - 2]
+                        && sink.accept(buffer, stemSize - 1))
+                    return true;
+            case RULE_E:
+                buffer[stemSize] = 'e';
+                if (sink.accept(buffer, stemSize + 1)) return true;
+                return sink.accept(buffer, stemSize);
+            default:
+                return sink.accept(buffer, stemSize);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer.length < capacity) buffer = new char[Math.max(capacity, buffer.length * 2)];
+    }
+
+    private static void addSuffix(String suffix, int rule) {
+        Node node = ROOT;
+        for (int i = suffix.length() - 1; i >= 0; i--) node = node.addChild(suffix.charAt(i));
+        node.rule = rule;
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int rule = RULE_NONE;
+
+        Node child(char key) {
+            for (int i = 0; i < keys.length; i++)
+                if (keys[i] == key) return children[i];
+            return null;
+        }
+
+        Node addChild(char key) {
+            Node child = child(key);
+            if (child != null) return child;
+            child = new Node();
+            int size = keys.length;
+            char[] newKeys = new char[size + 1];
+            Node[] newChildren = new Node[size + 1];
+            System.arraycopy(keys, 0, newKeys, 0, size);
+            System.arraycopy(children, 0, newChildren, 0, size);
+            newKeys[size] = key;
+            newChildren[size] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+}
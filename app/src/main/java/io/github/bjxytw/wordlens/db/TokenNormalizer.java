@@ -0,0 +1,130 @@
+package io.github.bjxytw.wordlens.db;
+
+import java.text.Normalizer;
+
+public final class TokenNormalizer {
+    private static final int TABLE_SIZE = 0x2300;
+    private static final int FULLWIDTH_START = 0xff01;
+    private static final int FULLWIDTH_END = 0xff5e;
+    private static final int FULLWIDTH_OFFSET = 0xfee0;
+    private static final char REMOVE = '\uffff';
+    private static final char EXPAND = '\ufffe';
+    private static final boolean[] SYMBOLS = new boolean[TABLE_SIZE];
+    private static final char[] FOLDS = new char[TABLE_SIZE];
+
+    static {
+        for (int c = 0; c < TABLE_SIZE; c++) FOLDS[c] = (char) c;
+
+        // Spaces and controls, ASCII and Latin-1 punctuation, general punctuation,
+        // currency signs, arrows and mathematical operators.
+        markSymbols(0x00, 0x20);
+        markSymbols('!', '/');
+        markSymbols(':', '@');
+        markSymbols('[', '`');
+        markSymbols('{', 0xbf);
+        SYMBOLS[0xd7] = true;
+        SYMBOLS[0xf7] = true;
+        markSymbols(0x2000, 0x206f);
+        markSymbols(0x20a0, 0x20cf);
+        markSymbols(0x2190, 0x22ff);
+
+        FOLDS[0xa0] = ' ';
+        for (int c = 0x2000; c <= 0x200a; c++) FOLDS[c] = ' ';
+        FOLDS[0x202f] = ' ';
+        FOLDS[0x205f] = ' ';
+        FOLDS[0xad] = REMOVE;
+        for (int c = 0x200b; c <= 0x200d; c++) FOLDS[c] = REMOVE;
+        FOLDS[0x2060] = REMOVE;
+        for (int c = 0x2010; c <= 0x2015; c++) FOLDS[c] = '-';
+        FOLDS[0x2212] = '-';
+        for (int c = 0x2018; c <= 0x201b; c++) FOLDS[c] = '\'';
+        FOLDS[0x2032] = '\'';
+        for (int c = 0x201c; c <= 0x201f; c++) FOLDS[c] = '"';
+        FOLDS[0x2033] = '"';
+
+        for (int c = 0xc0; c <= 0x24f; c++) {
+            if (!Character.isLetter(c)) continue;
+            String decomposed = Normalizer.normalize(String.valueOf((char) c), Normalizer.Form.NFD);
+            char base = decomposed.charAt(0);
+            if (base < 0x80 && Character.isLetter(base)) FOLDS[c] = base;
+        }
+        FOLDS[0xd8] = 'O';
+        FOLDS[0xf8] = 'o';
+        FOLDS[0x110] = 'D';
+        FOLDS[0x111] = 'd';
+        FOLDS[0x131] = 'i';
+        FOLDS[0x141] = 'L';
+        FOLDS[0x142] = 'l';
+        for (char c : new char[]{0xc6, 0xe6, 0xdf, 0x132, 0x133, 0x152, 0x153}) FOLDS[c] = EXPAND;
+    }
+
+    private TokenNormalizer() {
+    }
+
+    // Trims symbols from both ends. Returns the same string when nothing is trimmed and null
+    // when nothing is left.
+    public static String trim(String text) {
+        int begin = 0;
+        int end = text.length();
+        while (begin < end && isSymbol(text.charAt(begin))) begin++;
+        while (end > begin && isSymbol(text.charAt(end - 1))) end--;
+        if (begin == end) return null;
+        return begin == 0 && end == text.length() ? text : text.substring(begin, end);
+    }
+
+    // Folds a trimmed token to the ASCII forms most headwords use. Returns the same string
+    // when nothing changes and null when nothing is left.
+    static String fold(String text) {
+        int length = text.length();
+        int i = 0;
+        while (i < length && foldChar(text.charAt(i)) == text.charAt(i)) i++;
+        if (i == length) return text;
+
+        StringBuilder builder = new StringBuilder(length + 2);
+        builder.append(text, 0, i);
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            char folded = foldChar(c);
+            if (folded == EXPAND) builder.append(expansion(c));
+            else if (folded != REMOVE) builder.append(folded);
+        }
+        return builder.length() > 0 ? builder.toString() : null;
+    }
+
+    static boolean isSymbol(char c) {
+        if (c < TABLE_SIZE) return SYMBOLS[c];
+        if (c >= FULLWIDTH_START && c <= FULLWIDTH_END) return SYMBOLS[c - FULLWIDTH_OFFSET];
+        return (c >= 0x3000 && c <= 0x303f) || (c > FULLWIDTH_END && c <= 0xff65) || c == 0xfeff;
+    }
+
+    private static char foldChar(char c) {
+        if (c < TABLE_SIZE) return FOLDS[c];
+        if (c >= FULLWIDTH_START && c <= FULLWIDTH_END) return (char) (c - FULLWIDTH_OFFSET);
+        if (c == 0x3000) return ' ';
+        if (c >= 0xfb00 && c <= 0xfb06) return EXPAND;
+        if (c == 0xfeff) return REMOVE;
+        return c;
+    }
+
+    private static String expansion(char c) {
+        switch (c) {
+            case 0xc6: return "AE";
+            case 0xe6: return "ae";
+            case 0xdf: return "ss";
+            case 0x132: return "IJ";
+            case 0x133: return "ij";
+            case 0x152: return "OE";
+            case 0x153: return "oe";
+            case 0xfb00: return "ff";
+            case 0xfb01: return "fi";
+            case 0xfb02: return "fl";
+            case 0xfb03: return "ffi";
+            case 0xfb04: return "ffl";
+            default: return "st";
+        }
+    }
+
+    private static void markSymbols(int first, int last) {
+        for (int c = first; c <= last; c++) SYMBOLS[c] = true;
+    }
+}
@@ -17,6 +17,9 @@ public class SettingsFragment extends PreferenceFragment {
     public static final String KEY_SEARCH_ENGINE = "search_engine_list";
     public static final String KEY_CUSTOM_TABS = "custom_tabs_switch";
     public static final String KEY_ZOOM_RATIO = "zoom_ratio_list";
+    public static final String KEY_CHANGE_THRESHOLD = "change_threshold_list";
+    public static final String KEY_PREVIEW_BUFFERS = "preview_buffers_list";
+    public static final String KEY_MAX_IN_FLIGHT = "max_in_flight_list";
     public static final String KEY_CURSOR_VISIBLE = "link_cursor_visible_switch";
     public static final String KEY_LINK_EXPAND = "link_expand_switch";
     public static final String KEY_LICENSE_MENU = "license";
@@ -27,6 +30,9 @@ public class SettingsFragment extends PreferenceFragment {
         addPreferencesFromResource(R.xml.preferences);
         bindPreferenceSummary(findPreference(KEY_SEARCH_ENGINE));
         bindPreferenceSummary(findPreference(KEY_ZOOM_RATIO));
+        bindPreferenceSummary(findPreference(KEY_CHANGE_THRESHOLD));
+        bindPreferenceSummary(findPreference(KEY_PREVIEW_BUFFERS));
+        bindPreferenceSummary(findPreference(KEY_MAX_IN_FLIGHT));
         Preference licensePref = findPreference(KEY_LICENSE_MENU);
         Preference ttsPref = findPreference(KEY_TTS_SETTINGS);
         licensePref.setOnPreferenceClickListener(new PreferenceClickListener());
@@ -0,0 +1,67 @@
+package io.github.bjxytw.wordlens;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FrameChangeDetectorTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private static byte[] frame(long seed) {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+
+    private static void addNoise(byte[] frame, int amount, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            int value = (frame[i] & 0xff) + random.nextInt(2 * amount + 1) - amount;
+            frame[i] = (byte) Math.max(0, Math.min(255, value));
+        }
+    }
+
+    @Test
+    public void skipsStillFramesUntilTheAreaChanges() {
+        FrameChangeDetector detector = new FrameChangeDetector(6);
+        byte[] frame = frame(1);
+        assertTrue(detector.hasChanged(frame, WIDTH, HEIGHT, 96, 180, 544, 300));
+        detector.accept();
+
+        addNoise(frame, 4, 2);
+        assertFalse(detector.hasChanged(frame, WIDTH, HEIGHT, 96, 180, 544, 300));
+        assertTrue(detector.hasChanged(frame(3), WIDTH, HEIGHT, 96, 180, 544, 300));
+        assertEquals(1f / 3, detector.skipRatio(), 1e-6);
+    }
+
+    @Test
+    public void ignoresChangesOutsideTheArea() {
+        FrameChangeDetector detector = new FrameChangeDetector(6);
+        byte[] frame = frame(4);
+        detector.hasChanged(frame, WIDTH, HEIGHT, 96, 180, 544, 300);
+        detector.accept();
+
+        for (int i = 0; i < 100 * WIDTH; i++) frame[i] = 0;
+        assertFalse(detector.hasChanged(frame, WIDTH, HEIGHT, 96, 180, 544, 300));
+        assertTrue(detector.hasChanged(frame, WIDTH, HEIGHT, 96, 182, 544, 302));
+    }
+
+    @Test
+    public void resetAndZeroThresholdLetFramesThrough() {
+        FrameChangeDetector detector = new FrameChangeDetector(6);
+        byte[] frame = frame(5);
+        detector.hasChanged(frame, WIDTH, HEIGHT, 96, 180, 544, 300);
+        detector.accept();
+        detector.reset();
+        assertTrue(detector.hasChanged(frame, WIDTH, HEIGHT, 96, 180, 544, 300));
+        detector.accept();
+
+        detector.setThreshold(0);
+        assertTrue(detector.hasChanged(frame, WIDTH, HEIGHT, 96, 180, 544, 300));
+        detector.setThreshold(6);
+        assertFalse(detector.hasChanged(frame, WIDTH, HEIGHT, 96, 180, 544, 300));
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.bjxytw.wordlens;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameCropperTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private static byte[] frame(int width, int height) {
+        byte[] frame = new byte[width * height * 3 / 2 + 1];
+        for (int i = 0; i < frame.length; i++) frame[i] = (byte) (i * 31 + i / width);
+        return frame;
+    }
+
+    @Test
+    public void copiesLumaAndChromaOfArea() {
+        byte[] frame = frame(WIDTH, HEIGHT);
+        FrameCropper.Crop crop = new FrameCropper().crop(frame, WIDTH, HEIGHT, 101, 50, 300, 171);
+
+        assertEquals(100, crop.left);
+        assertEquals(50, crop.top);
+        assertEquals(200, crop.width);
+        assertEquals(122, crop.height);
+        assertEquals(200 * 122 * 3 / 2, crop.data.length);
+        for (int y = 0; y < crop.height; y++) {
+            for (int x = 0; x < crop.width; x++)
+                assertEquals(frame[(crop.top + y) * WIDTH + crop.left + x], crop.data[y * crop.width + x]);
+        }
+        int lumaSize = crop.width * crop.height;
+        for (int y = 0; y < crop.height / 2; y++) {
+            for (int x = 0; x < crop.width; x++)
+                assertEquals(frame[WIDTH * HEIGHT + (crop.top / 2 + y) * WIDTH + crop.left + x],
+                        crop.data[lumaSize + y * crop.width + x]);
+        }
+    }
+
+    @Test
+    public void clampsAreaToFrame() {
+        FrameCropper cropper = new FrameCropper();
+        FrameCropper.Crop crop = cropper.crop(frame(WIDTH, HEIGHT), WIDTH, HEIGHT, -10, -3, 700, 481);
+        assertEquals(0, crop.left);
+        assertEquals(0, crop.top);
+        assertEquals(WIDTH, crop.width);
+        assertEquals(HEIGHT, crop.height);
+        assertNull(cropper.crop(frame(WIDTH, HEIGHT), WIDTH, HEIGHT, 10, 10, 10, 40));
+    }
+
+    @Test
+    public void reusesBuffersOfSameSize() {
+        FrameCropper cropper = new FrameCropper();
+        byte[] frame = frame(WIDTH, HEIGHT);
+        FrameCropper.Crop first = cropper.crop(frame, WIDTH, HEIGHT, 0, 0, 100, 100);
+        cropper.recycle(first);
+        assertSame(first.data, cropper.crop(frame, WIDTH, HEIGHT, 20, 20, 120, 120).data);
+        assertNotSame(first.data, cropper.crop(frame, WIDTH, HEIGHT, 20, 20, 120, 120).data);
+    }
+
+    @Test
+    public void mapsUprightBoxesBackToCameraFrame() {
+        FrameCropper.Crop crop = new FrameCropper().crop(frame(WIDTH, HEIGHT), WIDTH, HEIGHT, 80, 180, 560, 300);
+        // A box at upright x 10..30 and y 100..140 in the crop covers camera columns 180..220
+        // and, counted from the bottom of the crop, rows 270..290.
+        assertEquals(180, crop.cameraLeft(100));
+        assertEquals(220, crop.cameraRight(140));
+        assertEquals(270, crop.cameraTop(30));
+        assertEquals(290, crop.cameraBottom(10));
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.bjxytw.wordlens;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RecognitionSlotsTest {
+
+    @Test
+    public void limitsRecognitionsInFlight() {
+        RecognitionSlots slots = new RecognitionSlots(2);
+        assertTrue(slots.tryAcquire());
+        assertTrue(slots.tryAcquire());
+        assertFalse(slots.tryAcquire());
+        assertEquals(1, slots.busyCount());
+
+        assertTrue(slots.release(0, 0, true, 10));
+        assertTrue(slots.tryAcquire());
+        slots.setLimit(1);
+        assertFalse(slots.tryAcquire());
+    }
+
+    @Test
+    public void failuresReleaseTheirSlot() {
+        RecognitionSlots slots = new RecognitionSlots(1);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(slots.tryAcquire());
+            assertTrue(slots.release(i, 0, false, 10));
+        }
+        assertEquals(0, slots.inFlightCount());
+        assertTrue(slots.stats().contains("failed=5"));
+    }
+
+    @Test
+    public void abandonedSlotsDoNotMoveTheNewestSequence() {
+        RecognitionSlots slots = new RecognitionSlots(2);
+        assertTrue(slots.tryAcquire());
+        assertTrue(slots.tryAcquire());
+        slots.abandon();
+        assertEquals(1, slots.inFlightCount());
+
+        assertTrue(slots.release(0, 0, true, 10));
+        assertEquals(0, slots.staleCount());
+        assertTrue(slots.stats().contains("failed=1"));
+    }
+
+    @Test
+    public void dropsResultsOlderThanTheNewestDelivered() {
+        RecognitionSlots slots = new RecognitionSlots(3);
+        slots.tryAcquire();
+        slots.tryAcquire();
+        slots.tryAcquire();
+
+        assertTrue(slots.release(1, 0, true, 10));
+        assertFalse(slots.release(0, 0, true, 10));
+        assertTrue(slots.release(2, 0, false, 10));
+        assertEquals(1, slots.staleCount());
+        assertEquals(0, slots.inFlightCount());
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.bjxytw.wordlens.camera;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PreviewBufferPoolTest {
+    private static final long INTERVAL = 100000000L;
+
+    @Test
+    public void mapsCameraArraysToBuffers() {
+        PreviewBufferPool pool = new PreviewBufferPool(16, 3, INTERVAL);
+        List<byte[]> arrays = new ArrayList<>(pool.arrays());
+        assertEquals(3, arrays.size());
+
+        ByteBuffer buffer = pool.onFrame(arrays.get(1), 0);
+        assertNotNull(buffer);
+        assertSame(arrays.get(1), buffer.array());
+        assertSame(arrays.get(1), pool.recycle(buffer));
+        assertNull(pool.onFrame(new byte[16], INTERVAL));
+    }
+
+    @Test
+    public void countsFramesDroppedWhileBuffersAreOut() {
+        PreviewBufferPool pool = new PreviewBufferPool(16, 2, INTERVAL);
+        List<byte[]> arrays = new ArrayList<>(pool.arrays());
+
+        ByteBuffer first = pool.onFrame(arrays.get(0), 0);
+        ByteBuffer second = pool.onFrame(arrays.get(1), INTERVAL);
+        assertEquals(0, pool.droppedCount());
+
+        // Both buffers are out, so the camera skips frames until one comes back.
+        pool.recycle(first);
+        first = pool.onFrame(arrays.get(0), 5 * INTERVAL);
+        assertEquals(3, pool.droppedCount());
+
+        pool.recycle(second);
+        pool.recycle(first);
+        pool.onFrame(arrays.get(1), 6 * INTERVAL);
+        pool.onFrame(arrays.get(0), 9 * INTERVAL);
+        assertEquals(3, pool.droppedCount());
+    }
+
+    @Test
+    public void countsDeliveredAndSupersededFrames() {
+        PreviewBufferPool pool = new PreviewBufferPool(16, 3, INTERVAL);
+        pool.onDelivered();
+        pool.onSuperseded();
+        pool.onSuperseded();
+        assertEquals(1, pool.deliveredCount());
+        assertEquals(2, pool.supersededCount());
+        assertTrue(pool.stats().contains("superseded=2"));
+    }
+}
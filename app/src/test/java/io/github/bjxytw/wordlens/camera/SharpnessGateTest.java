@@ -0,0 +1,72 @@
+package io.github.bjxytw.wordlens.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SharpnessGateTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    // Vertical black and white bars, like text strokes, softened by a box blur of the radius.
+    private static byte[] bars(int radius) {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0;
+                for (int i = x - radius; i <= x + radius; i++) sum += (i / 3) % 2 == 0 ? 230 : 20;
+                frame[y * WIDTH + x] = (byte) (sum / (2 * radius + 1));
+            }
+        }
+        return frame;
+    }
+
+    @Test
+    public void blurLowersSharpness() {
+        float sharp = SharpnessGate.sharpness(bars(0), WIDTH, HEIGHT, 280, 200, 360, 280);
+        float soft = SharpnessGate.sharpness(bars(2), WIDTH, HEIGHT, 280, 200, 360, 280);
+        float flat = SharpnessGate.sharpness(new byte[WIDTH * HEIGHT], WIDTH, HEIGHT, 280, 200, 360, 280);
+        assertTrue(sharp > 4 * soft);
+        assertEquals(0, flat, 0);
+    }
+
+    @Test
+    public void dropsBlurredFramesAfterSharpOnes() {
+        SharpnessGate gate = new SharpnessGate();
+        gate.setArea(280, 200, 360, 280);
+        assertTrue(gate.isSharp(bars(0), WIDTH, HEIGHT, 0));
+        assertFalse(gate.isSharp(bars(3), WIDTH, HEIGHT, 0));
+        assertFalse(gate.isSharp(new byte[WIDTH * HEIGHT * 3 / 2], WIDTH, HEIGHT, 0));
+        assertTrue(gate.isSharp(bars(0), WIDTH, HEIGHT, 0));
+    }
+
+    @Test
+    public void adaptsToSceneWithLessTexture() {
+        SharpnessGate gate = new SharpnessGate();
+        gate.setArea(280, 200, 360, 280);
+        gate.isSharp(bars(0), WIDTH, HEIGHT, 0);
+        byte[] soft = bars(2);
+        int dropped = 0;
+        while (!gate.isSharp(soft, WIDTH, HEIGHT, 0)) dropped++;
+        assertTrue(dropped > 0 && dropped < 30);
+    }
+
+    @Test
+    public void waitsForFocusAndResumesAfterIt() {
+        SharpnessGate gate = new SharpnessGate();
+        gate.setArea(280, 200, 360, 280);
+        gate.isSharp(bars(0), WIDTH, HEIGHT, 0);
+
+        gate.onFocusStarted(0);
+        assertFalse(gate.isSharp(bars(0), WIDTH, HEIGHT, 100000000L));
+        // A sweep that never reports back stops holding frames after the timeout.
+        assertTrue(gate.isSharp(bars(0), WIDTH, HEIGHT, 3000000000L));
+
+        gate.onFocusStarted(0);
+        gate.onFocusFinished(true);
+        // The first frame after focus sets the new peak, even if the scene is softer.
+        assertTrue(gate.isSharp(bars(2), WIDTH, HEIGHT, 0));
+        assertTrue(gate.isSharp(bars(2), WIDTH, HEIGHT, 0));
+        assertTrue(gate.stats().contains("focusing=1"));
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.bjxytw.wordlens.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DefinitionStoreTest {
+    private static final String[] SENSES = {
+            "りんご", "りんごの木", "走る",
+            "を運営する", "名詞", "動詞", "(人が)する",
+            "ところの", "について", "のために"
+    };
+
+    private final List<Long> rows = new ArrayList<>();
+    private final List<String> words = new ArrayList<>();
+    private final List<String> means = new ArrayList<>();
+    private File file;
+    private DefinitionStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < 1000; i++) {
+            rows.add(i * 2L + 1);
+            words.add("word" + i);
+            StringBuilder mean = new StringBuilder();
+            for (int j = 0; j <= i % 4; j++) {
+                if (j > 0) mean.append(" / ");
+                mean.append(SENSES[(i + j) % SENSES.length]).append(',')
+                        .append(SENSES[(i * 7 + j) % SENSES.length]);
+            }
+            means.add(mean.toString());
+        }
+        file = File.createTempFile("definitions", ".defs");
+        DefinitionStore.write(rows, words, means, DictionaryUpdater.BASE_DATA_VERSION, file);
+        store = DefinitionStore.load(file, DictionaryUpdater.BASE_DATA_VERSION);
+        assertNotNull(store);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void readsEveryEntry() {
+        assertEquals(rows.size(), store.size());
+        for (int i = rows.size() - 1; i >= 0; i -= 3) {
+            assertTrue(store.seek(rows.get(i)));
+            assertEquals(words.get(i), store.word());
+            assertEquals(DictionarySearch.formatMean(means.get(i)), store.mean());
+        }
+    }
+
+    @Test
+    public void missesAbsentRows() {
+        for (long row : Arrays.asList(0L, 2L, 2000L, -1L))
+            assertFalse(store.seek(row));
+    }
+
+    @Test
+    public void compressesBelowRawSize() {
+        long rawBytes = 0;
+        for (int i = 0; i < rows.size(); i++)
+            rawBytes += words.get(i).getBytes().length + means.get(i).getBytes().length;
+        assertTrue(file.length() + " >= " + rawBytes, file.length() < rawBytes);
+    }
+
+    @Test
+    public void storesLinksToHeadwords() throws IOException {
+        File linkFile = File.createTempFile("links", ".defs");
+        DefinitionStore.write(Arrays.asList(10L, 11L, 12L),
+                Arrays.asList("apple", "Banana", "go"),
+                Arrays.asList("りんご / (Banana)とappleとgo", "バナナ / apple pie", "行く / x"),
+                DictionaryUpdater.BASE_DATA_VERSION, linkFile);
+        DefinitionStore linkStore = DefinitionStore.load(linkFile, DictionaryUpdater.BASE_DATA_VERSION);
+        assertNotNull(linkStore);
+
+        assertTrue(linkStore.seek(10));
+        String mean = linkStore.mean();
+        assertEquals(2, linkStore.linkCount());
+        assertEquals("Banana", mean.substring(linkStore.linkStart(0), linkStore.linkEnd(0)));
+        assertEquals(11, linkStore.linkRow(0));
+        assertEquals("go", mean.substring(linkStore.linkStart(1), linkStore.linkEnd(1)));
+        assertEquals(12, linkStore.linkRow(1));
+
+        assertTrue(linkStore.seek(11));
+        assertEquals(1, linkStore.linkCount());
+        assertEquals(10, linkStore.linkRow(0));
+
+        assertTrue(linkStore.seek(12));
+        assertEquals(0, linkStore.linkCount());
+        linkStore.close();
+        assertTrue(linkFile.delete());
+    }
+
+    @Test
+    public void rejectsStaleDataVersion() {
+        assertNull(DefinitionStore.load(file, DictionaryUpdater.BASE_DATA_VERSION + 1));
+    }
+
+    @Test
+    public void trainsDictionaryFromRepeatedFragments() {
+        byte[] dictionary = DefinitionStore.trainDictionary(means);
+        assertTrue(dictionary.length > 0);
+        assertTrue(new String(dictionary, java.nio.charset.Charset.forName("UTF-8")).contains(SENSES[0]));
+    }
+}
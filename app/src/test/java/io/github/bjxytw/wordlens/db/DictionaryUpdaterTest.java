@@ -0,0 +1,76 @@
+package io.github.bjxytw.wordlens.db;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class DictionaryUpdaterTest {
+
+    @Test
+    public void parsesInsertAndUpdate() throws IOException {
+        DictionaryUpdater.DeltaRow row = DictionaryUpdater.parseRow("+\t42\tx-ray\tエックス線 / 放射線\t3");
+        assertNotNull(row);
+        assertEquals(DictionaryUpdater.INSERT, row.operation);
+        assertEquals(42, row.id);
+        assertEquals("x-ray", row.word);
+        assertEquals("エックス線 / 放射線", row.mean);
+        assertEquals(3, row.level);
+
+        row = DictionaryUpdater.parseRow("~\t7\tgo\t行く\\t去る\t0\textra");
+        assertNotNull(row);
+        assertEquals(DictionaryUpdater.UPDATE, row.operation);
+        assertEquals(7, row.id);
+        assertEquals("行く\t去る", row.mean);
+    }
+
+    @Test
+    public void parsesDelete() throws IOException {
+        DictionaryUpdater.DeltaRow row = DictionaryUpdater.parseRow("-\t99");
+        assertNotNull(row);
+        assertEquals(DictionaryUpdater.DELETE, row.operation);
+        assertEquals(99, row.id);
+        assertNull(row.word);
+    }
+
+    @Test
+    public void skipsBlankAndCommentLines() throws IOException {
+        assertNull(DictionaryUpdater.parseRow(""));
+        assertNull(DictionaryUpdater.parseRow("# delta 2"));
+    }
+
+    @Test
+    public void rejectsInvalidLines() {
+        for (String line : new String[]{"+\t1\tword\tmean", "-", "~\tx\tword\tmean\t0",
+                "+\t1\tword\tmean\tlevel", "*\t1", " -\t1"}) {
+            try {
+                DictionaryUpdater.parseRow(line);
+                fail(line);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(line));
+            }
+        }
+    }
+
+    @Test
+    public void checksColumnCount() throws IOException {
+        DictionaryUpdater.checkColumns(new String[]{"-", "1"}, 2, "-\t1");
+        DictionaryUpdater.checkColumns(new String[]{"-", "1", ""}, 2, "-\t1\t");
+        try {
+            DictionaryUpdater.checkColumns(new String[]{"-"}, 2, "-");
+            fail();
+        } catch (IOException e) {
+            assertEquals("Invalid delta line: -", e.getMessage());
+        }
+    }
+
+    @Test
+    public void unescapesTabsNewlinesAndBackslashes() {
+        assertEquals("plain", DictionaryUpdater.unescape("plain"));
+        assertEquals("a\tb\nc", DictionaryUpdater.unescape("a\\tb\\nc"));
+        assertEquals("a\\b", DictionaryUpdater.unescape("a\\\\b"));
+        assertEquals("quote\"", DictionaryUpdater.unescape("quote\\\""));
+        assertEquals("trailing\\", DictionaryUpdater.unescape("trailing\\"));
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.bjxytw.wordlens.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FuzzyMatcherTest {
+    private static final int UNRANKED = Integer.MAX_VALUE;
+    private static final long UNLIMITED_NANOS = Long.MAX_VALUE / 2;
+    private static final int CANDIDATE_BUDGET = 64;
+
+    private static FuzzyMatcher create(String[] keys, int[] ranks) {
+        return new FuzzyMatcher(keys, ranks, UNLIMITED_NANOS, CANDIDATE_BUDGET);
+    }
+
+    @Test
+    public void correctsTypicalOcrErrors() {
+        String[] keys = {"close", "clear", "dear", "island", "modern", "morning", "swallow", "world"};
+        int[] ranks = new int[keys.length];
+        FuzzyMatcher matcher = create(keys, ranks);
+
+        assertEquals("modern", matcher.match("rnodern"));
+        assertEquals("morning", matcher.match("rnorning"));
+        assertEquals("swallow", matcher.match("svvallow"));
+        assertEquals("island", matcher.match("is1and"));
+        assertEquals("world", matcher.match("w0rld"));
+        assertEquals("close", matcher.match("c1ose"));
+        assertEquals("clear", matcher.match("c1ear"));
+        assertEquals("clear", matcher.match("clear1"));
+        assertEquals("island", matcher.match("islnd"));
+    }
+
+    @Test
+    public void rejectsDistantAndShortQueries() {
+        String[] keys = {"cat", "dog", "modern", "world"};
+        FuzzyMatcher matcher = create(keys, new int[keys.length]);
+
+        assertNull(matcher.match("ct"));
+        assertNull(matcher.match("cow"));
+        assertNull(matcher.match("wonder"));
+        assertNull(matcher.match("日本語"));
+    }
+
+    @Test
+    public void prefersRankedHeadwordOnTie() {
+        String[] keys = {"baker", "bare", "bore", "maker", "taker"};
+        int[] ranks = {1, 5, 1, 3, UNRANKED};
+        FuzzyMatcher matcher = create(keys, ranks);
+
+        assertEquals("bore", matcher.match("b0re"));
+        assertEquals("baker", matcher.match("xaker"));
+        assertNull(matcher.match("bxre"));
+    }
+
+    @Test
+    public void distanceWeightsConfusions() {
+        FuzzyMatcher matcher = create(new String[0], new int[0]);
+
+        assertEquals(0f, matcher.distance("word", "word"), 0.001f);
+        assertEquals(0.4f, matcher.distance("rnodern", "modern"), 0.001f);
+        assertEquals(0.4f, matcher.distance("modem", "modern"), 0.001f);
+        assertEquals(0.4f, matcher.distance("w0rd", "word"), 0.001f);
+        assertEquals(1f, matcher.distance("wrod", "word"), 0.001f);
+        assertEquals(1f, matcher.distance("wod", "word"), 0.001f);
+        assertEquals(2f, matcher.distance("wxyd", "word"), 0.001f);
+    }
+
+    @Test
+    public void givesUpWhenBudgetIsSpent() {
+        String[] keys = {"modern", "world"};
+        FuzzyMatcher matcher = new FuzzyMatcher(keys, new int[keys.length], -1, CANDIDATE_BUDGET);
+
+        assertNull(matcher.match("rnodern"));
+        assertEquals("Fuzzy queries: 1, over budget: 1", matcher.stats());
+    }
+}
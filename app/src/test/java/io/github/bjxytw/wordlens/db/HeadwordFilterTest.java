@@ -0,0 +1,79 @@
+package io.github.bjxytw.wordlens.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HeadwordFilterTest {
+    private List<String> keys;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        keys = new ArrayList<>(Arrays.asList(
+                "a", "apple", "apples", "can't", "caf\u00e9", "x-ray", "look up", "ran", "run"));
+        for (int i = 0; i < 2000; i++) keys.add("word" + i);
+        file = File.createTempFile("headwords", ".filter");
+        HeadwordFilter.write(keys, DictionaryUpdater.BASE_DATA_VERSION, file);
+    }
+
+    @After
+    public void tearDown() {
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void containsEveryKey() {
+        HeadwordFilter filter = HeadwordFilter.load(file, DictionaryUpdater.BASE_DATA_VERSION);
+        assertNotNull(filter);
+        for (String key : keys) assertTrue(key, filter.mightContain(key));
+        assertTrue(filter.mightContain(new StringBuilder("apple")));
+    }
+
+    @Test
+    public void rejectsMostAbsentKeys() {
+        HeadwordFilter filter = HeadwordFilter.load(file, DictionaryUpdater.BASE_DATA_VERSION);
+        assertNotNull(filter);
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++)
+            if (filter.mightContain("absent" + i)) falsePositives++;
+        assertTrue(String.valueOf(falsePositives), falsePositives < 100);
+    }
+
+    @Test
+    public void rejectsStaleDataVersion() {
+        assertNull(HeadwordFilter.load(file, DictionaryUpdater.BASE_DATA_VERSION + 1));
+    }
+
+    @Test
+    public void rejectsBadMagic() throws IOException {
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.writeInt(0);
+        }
+        assertNull(HeadwordFilter.load(file, DictionaryUpdater.BASE_DATA_VERSION));
+    }
+
+    @Test
+    public void rejectsTruncatedFile() throws IOException {
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(output.length() / 2);
+        }
+        assertNull(HeadwordFilter.load(file, DictionaryUpdater.BASE_DATA_VERSION));
+
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(file))) {
+            output.writeInt(0x574c4246);
+        }
+        assertNull(HeadwordFilter.load(file, DictionaryUpdater.BASE_DATA_VERSION));
+    }
+}
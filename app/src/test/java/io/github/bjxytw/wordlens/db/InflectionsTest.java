@@ -0,0 +1,94 @@
+package io.github.bjxytw.wordlens.db;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class InflectionsTest {
+    private static final String[] HEADWORDS = {
+            "run", "stop", "big", "hot", "make", "bake", "baker", "go", "box", "watch",
+            "cry", "happy", "study", "apply", "play", "book", "walk", "fast", "large",
+            "nice", "ski", "hope", "hop", "free", "agree", "see", "tie", "die", "fix",
+            "kiss", "bus", "quiz", "wish", "boss", "add", "fall", "bill", "child", "go",
+            "take", "mouse", "good", "bet", "better", "best", "open", "visit", "travel",
+            "x-ray", "look up", "follow-up", "café", "cd-rom"
+    };
+    private static final String[] SURFACE_FORMS = {
+            "running", "stopped", "stopping", "bigger", "biggest", "hotter", "making", "baked",
+            "bakes", "goes", "boxes", "watches", "cried", "cries", "happier", "happiest",
+            "studies", "studied", "applied", "plays", "played", "books", "walked", "walking",
+            "walker", "faster", "fastest", "larger", "largest", "nicer", "nicest", "skis",
+            "skiing", "hoped", "hoping", "hopped", "hopping", "freed", "agreed", "sees",
+            "seeing", "tied", "ties", "died", "dying", "fixes", "fixed", "kisses", "buses",
+            "quizzes", "wishes", "bosses", "added", "falling", "billed", "opened", "opening",
+            "visited", "travelled", "traveled", "ss", "s", "ing", "xyzzy", "runner", "oddest",
+            "x-rays", "x-rayed", "look ups", "follow-ups", "cafés", "cd-roms"
+    };
+
+    private Set<String> headwords;
+    private Map<String, String> forms;
+
+    @Before
+    public void setUp() throws IOException {
+        headwords = new HashSet<>(Arrays.asList(HEADWORDS));
+        String irregular = "go went gone\nchild children\nmouse mice\ntake took taken\n# comment\n";
+        forms = Inflections.build(headwords, Inflections.readIrregularForms(
+                new ByteArrayInputStream(irregular.getBytes(Charset.forName("UTF-8")))));
+    }
+
+    @Test
+    public void matchesSuffixCascade() {
+        for (String form : SURFACE_FORMS) {
+            String expected = cascade(form);
+            if (expected != null)
+                assertEquals(form, expected, lookup(form));
+        }
+    }
+
+    @Test
+    public void resolvesIrregularForms() {
+        assertEquals("go", lookup("went"));
+        assertEquals("go", lookup("gone"));
+        assertEquals("child", lookup("children"));
+        assertEquals("mouse", lookup("mice"));
+        assertEquals("take", lookup("took"));
+    }
+
+    @Test
+    public void inflectsLastSegmentOfCompounds() {
+        assertEquals("x-ray", lookup("x-rays"));
+        assertEquals("x-ray", lookup("x-rayed"));
+        assertEquals("follow-up", lookup("follow-ups"));
+        assertEquals("cd-rom", lookup("cd-roms"));
+        assertEquals("café", lookup("cafés"));
+    }
+
+    @Test
+    public void skipsHeadwordsAndUnknownForms() {
+        assertFalse(forms.containsKey("better"));
+        assertFalse(forms.containsKey("baker"));
+        assertNull(lookup("xyzzy"));
+    }
+
+    private String lookup(String word) {
+        if (headwords.contains(word)) return word;
+        return forms.get(word);
+    }
+
+    private String cascade(String word) {
+        if (headwords.contains(word)) return word;
+        for (String candidate : SuffixReference.candidates(word)) {
+            if (headwords.contains(candidate)) return candidate;
+        }
+        return null;
+    }
+}
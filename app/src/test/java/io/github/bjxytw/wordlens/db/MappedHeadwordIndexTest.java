@@ -0,0 +1,63 @@
+package io.github.bjxytw.wordlens.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class MappedHeadwordIndexTest {
+    private List<String> keys;
+    private File file;
+    private MappedHeadwordIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        TreeSet<String> sorted = new TreeSet<>(Arrays.asList(
+                "a", "apple", "apples", "application", "apply", "banana", "band", "bandage",
+                "can't", "caf\u00e9", "run", "running", "runner", "take", "taken", "zoo"));
+        for (int i = 0; i < 100; i++) sorted.add("word" + i);
+        keys = new ArrayList<>(sorted);
+
+        List<long[]> rows = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++)
+            rows.add(i % 3 == 0 ? new long[]{i * 10 + 1, i * 10 + 5} : new long[]{i * 10 + 1});
+
+        file = File.createTempFile("headwords", ".index");
+        MappedHeadwordIndex.write(keys, rows, DictionaryUpdater.BASE_DATA_VERSION, file);
+        index = MappedHeadwordIndex.load(file, DictionaryUpdater.BASE_DATA_VERSION);
+        assertNotNull(index);
+    }
+
+    @After
+    public void tearDown() {
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void findsEveryKey() {
+        assertEquals(keys.size(), index.size());
+        for (int i = 0; i < keys.size(); i++) {
+            long[] expected = i % 3 == 0 ? new long[]{i * 10 + 1, i * 10 + 5} : new long[]{i * 10 + 1};
+            assertArrayEquals(keys.get(i), expected, index.findRows(keys.get(i)));
+        }
+    }
+
+    @Test
+    public void missesAbsentKeys() {
+        for (String key : new String[]{"", "aa", "appl", "bananas", "word100", "zzz", "0"})
+            assertNull(key, index.findRows(key));
+    }
+
+    @Test
+    public void rejectsStaleDataVersion() {
+        assertNull(MappedHeadwordIndex.load(file, DictionaryUpdater.BASE_DATA_VERSION + 1));
+    }
+}
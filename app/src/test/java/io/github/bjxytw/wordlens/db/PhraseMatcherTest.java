@@ -0,0 +1,105 @@
+package io.github.bjxytw.wordlens.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PhraseMatcherTest {
+    private static final String[] KEYS = {
+            "in", "in case of", "in spite", "in spite of", "look", "look after", "look up",
+            "look up to", "of course", "spite", "take", "take off", "up to"
+    };
+
+    private static List<String> line(String text) {
+        return Arrays.asList(text.split(" "));
+    }
+
+    @Test
+    public void findsLongestExpressionUnderCursor() {
+        PhraseMatcher matcher = new PhraseMatcher(KEYS);
+        List<String> line = line("She went out in spite of the rain.");
+
+        assertEquals("in spite of", matcher.findExpression(line, 3));
+        assertEquals("in spite of", matcher.findExpression(line, 4));
+        assertEquals("in spite of", matcher.findExpression(line, 5));
+        assertNull(matcher.findExpression(line, 2));
+        assertNull(matcher.findExpression(line, 6));
+    }
+
+    @Test
+    public void matchesAccentedKeysBeforeFolding() {
+        PhraseMatcher matcher = new PhraseMatcher(new String[]{"déjà vu", "cafe au lait"});
+
+        assertEquals("déjà vu", matcher.findExpression(line("a déjà vu moment"), 1));
+        assertEquals("cafe au lait", matcher.findExpression(line("Café au lait."), 0));
+    }
+
+    @Test
+    public void prefersLongerOverlappingExpression() {
+        PhraseMatcher matcher = new PhraseMatcher(KEYS);
+        List<String> line = line("They Look up to him, of course.");
+
+        assertEquals("look up to", matcher.findExpression(line, 1));
+        assertEquals("look up to", matcher.findExpression(line, 3));
+        assertEquals("of course", matcher.findExpression(line, 6));
+        assertEquals("take off", matcher.findExpression(line("(take off)"), 0));
+    }
+
+    @Test
+    public void followsFailureLinks() {
+        PhraseMatcher matcher = new PhraseMatcher(KEYS);
+
+        assertEquals("up to", matcher.findExpression(line("look up up to"), 3));
+        assertEquals("look up", matcher.findExpression(line("look look up"), 2));
+        assertEquals("in case of", matcher.findExpression(line("in in case of"), 3));
+        assertNull(matcher.findExpression(line("look"), 0));
+        assertNull(matcher.findExpression(line("look up"), 5));
+    }
+
+    @Test
+    public void matchesScanOnRandomLines() {
+        Random random = new Random(3);
+        String[] vocabulary = {"a", "b", "c", "d", "e"};
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            int length = 2 + random.nextInt(4);
+            StringBuilder key = new StringBuilder(vocabulary[random.nextInt(vocabulary.length)]);
+            for (int j = 1; j < length; j++) key.append(' ').append(vocabulary[random.nextInt(vocabulary.length)]);
+            keys.add(key.toString());
+        }
+        PhraseMatcher matcher = new PhraseMatcher(keys.toArray(new String[0]));
+
+        for (int round = 0; round < 500; round++) {
+            List<String> line = new ArrayList<>();
+            int length = 1 + random.nextInt(12);
+            for (int i = 0; i < length; i++) line.add(vocabulary[random.nextInt(vocabulary.length)]);
+            int cursor = random.nextInt(length);
+            assertEquals(line + " @" + cursor, scan(keys, line, cursor), matcher.findExpression(line, cursor));
+        }
+    }
+
+    private static String scan(List<String> keys, List<String> line, int cursor) {
+        String best = null;
+        int bestStart = 0;
+        int bestLength = 0;
+        for (int start = 0; start <= cursor; start++) {
+            for (int end = Math.max(cursor + 1, start + 2); end <= line.size(); end++) {
+                StringBuilder candidate = new StringBuilder(line.get(start));
+                for (int i = start + 1; i < end; i++) candidate.append(' ').append(line.get(i));
+                boolean better = end - start > bestLength
+                        || (end - start == bestLength && end < bestStart + bestLength);
+                if (better && keys.contains(candidate.toString())) {
+                    best = candidate.toString();
+                    bestStart = start;
+                    bestLength = end - start;
+                }
+            }
+        }
+        return best;
+    }
+}
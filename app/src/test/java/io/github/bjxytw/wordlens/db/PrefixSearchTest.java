@@ -0,0 +1,82 @@
+package io.github.bjxytw.wordlens.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class PrefixSearchTest {
+    private static final int UNRANKED = Integer.MAX_VALUE;
+
+    private static PrefixSearch create(String[] keys, int[] ranks) {
+        return new PrefixSearch(keys, keys.clone(), ranks);
+    }
+
+    @Test
+    public void ranksByLevelThenLength() {
+        String[] keys = {"take", "taken", "takeover", "tale", "talk", "tall", "tax"};
+        int[] ranks = {1, 3, UNRANKED, UNRANKED, 1, 2, UNRANKED};
+        PrefixSearch search = create(keys, ranks);
+
+        assertEquals(Arrays.asList("take", "talk", "tall", "taken", "tax"), search.suggest("ta", 5));
+        assertEquals(Arrays.asList("take", "taken", "takeover"), search.suggest("tak", 5));
+        assertEquals(Arrays.asList("talk", "tall", "tale"), search.suggest("tal", 5));
+        assertEquals(Collections.singletonList("tax"), search.suggest("tax", 5));
+        assertTrue(search.suggest("taxi", 5).isEmpty());
+        assertTrue(search.suggest("", 5).isEmpty());
+        assertEquals(Arrays.asList("take", "talk"), search.suggest("t", 2));
+    }
+
+    @Test
+    public void matchesScanForEditedQueries() {
+        Random random = new Random(7);
+        String[] keys = randomKeys(random, 5000);
+        int[] ranks = new int[keys.length];
+        for (int i = 0; i < ranks.length; i++) ranks[i] = random.nextInt(4) == 0 ? UNRANKED : random.nextInt(12) + 1;
+        PrefixSearch search = create(keys, ranks);
+
+        String[] queries = {"a", "ab", "abc", "ab", "b", "ba", "bac", "bad", "", "c", "ca", "cab", "ca", "cb"};
+        for (String query : queries)
+            assertEquals(query, scan(keys, ranks, query, 8), search.suggest(query, 8));
+    }
+
+    private static String[] randomKeys(Random random, int count) {
+        TreeSet<String> keys = new TreeSet<>();
+        while (keys.size() < count) {
+            int length = 1 + random.nextInt(10);
+            StringBuilder key = new StringBuilder(length);
+            for (int i = 0; i < length; i++) key.append((char) ('a' + skewedLetter(random)));
+            keys.add(key.toString());
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    private static int skewedLetter(Random random) {
+        return Math.min(random.nextInt(26), random.nextInt(26));
+    }
+
+    private static List<String> scan(final String[] keys, final int[] ranks, String prefix, int limit) {
+        List<Integer> matches = new ArrayList<>();
+        if (prefix.isEmpty()) return new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) if (keys[i].startsWith(prefix)) matches.add(i);
+        Collections.sort(matches, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (ranks[a] != ranks[b]) return ranks[a] < ranks[b] ? -1 : 1;
+                if (keys[a].length() != keys[b].length())
+                    return keys[a].length() - keys[b].length();
+                return a - b;
+            }
+        });
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, matches.size()); i++) result.add(keys[matches.get(i)]);
+        return result;
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.bjxytw.wordlens.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReverseIndexTest {
+
+    @Test
+    public void tokenizesJapaneseAsBigrams() {
+        assertEquals("日本 本語 語", ReverseIndex.tokenize("日本語"));
+        assertEquals("を取 取る る take", ReverseIndex.tokenize("…を取る(Take)"));
+        assertEquals("りん んご ご 米俗 俗 大都 都市 市", ReverseIndex.tokenize("りんご / 《米俗》大都市"));
+        assertEquals("犬", ReverseIndex.tokenize("犬"));
+        assertEquals("", ReverseIndex.tokenize("《 / 》"));
+    }
+
+    @Test
+    public void keepsSurrogatePairsTogether() {
+        String rare = new String(Character.toChars(0x20b9f));
+        assertEquals(rare + "る る", ReverseIndex.tokenize(rare + "る"));
+    }
+
+    @Test
+    public void buildsPhraseQueries() {
+        assertEquals("\"日本 本語\"", ReverseIndex.matchExpression("日本語"));
+        assertEquals("\"りん\"", ReverseIndex.matchExpression("りん"));
+        assertEquals("犬*", ReverseIndex.matchExpression("犬"));
+        assertEquals("\"取る\" take", ReverseIndex.matchExpression("取る Take"));
+        assertNull(ReverseIndex.matchExpression(" \"* "));
+    }
+
+    @Test
+    public void ranksByFirstTokenOfLongestRun() {
+        assertEquals(" 日本 ", ReverseIndex.rankToken("日本語"));
+        assertEquals(" 犬", ReverseIndex.rankToken("犬"));
+        assertEquals(" take ", ReverseIndex.rankToken("取る Take"));
+        assertEquals(" ピッ ", ReverseIndex.rankToken("米 ピッチャー"));
+        assertEquals("", ReverseIndex.rankToken(" \"* "));
+    }
+
+    @Test
+    public void cutsSnippetAroundMatch() {
+        String mean = "《米》《俗》(野球で)投手,ピッチャー\n(取っ手のある)水差し";
+        assertEquals("…》《俗》(野球で)投手,ピッチャー (取っ手のある)水差し",
+                ReverseIndex.snippet(mean, "ピッチャー"));
+        assertEquals("《米》《俗》(野球で)投手,ピッチャー (取っ手の…", ReverseIndex.snippet(mean, "投手"));
+        assertEquals("りんご", ReverseIndex.snippet("りんご", "りんご"));
+        assertEquals("りんご", ReverseIndex.snippet("りんご", "みかん"));
+        assertEquals(3, ReverseIndex.matchPosition("投手,ピッチャー", "ピッチ"));
+        assertEquals(Integer.MAX_VALUE, ReverseIndex.matchPosition("投手", "捕手"));
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.bjxytw.wordlens.db;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SuffixCandidatesTest {
+    private static final String[] WORDS = {
+            "running", "stopped", "bigger", "biggest", "cried", "cries", "happier", "happiest",
+            "goes", "boxes", "plays", "walked", "baked", "seeing", "skiing", "ties", "ies",
+            "ied", "iest", "ss", "s", "es", "ing", "ed", "est", "bus", "buses", "kisses",
+            "added", "falling", "tree", "apple", "ooed", "aaing", "xxes", "lleer"
+    };
+
+    @Test
+    public void matchesReferenceCandidates() {
+        SuffixCandidates suffixes = new SuffixCandidates();
+        for (String word : WORDS)
+            assertEquals(word, SuffixReference.candidates(word), candidates(suffixes, word));
+    }
+
+    @Test
+    public void stopsWhenSinkAccepts() {
+        final List<String> seen = new ArrayList<>();
+        boolean stopped = new SuffixCandidates().forEach("stopped", new SuffixCandidates.Sink() {
+            @Override
+            public boolean accept(char[] buffer, int length) {
+                seen.add(new String(buffer, 0, length));
+                return true;
+            }
+        });
+        assertTrue(stopped);
+        assertEquals(1, seen.size());
+        assertEquals("stop", seen.get(0));
+    }
+
+    private static List<String> candidates(SuffixCandidates suffixes, String word) {
+        final List<String> candidates = new ArrayList<>();
+        suffixes.forEach(word, new SuffixCandidates.Sink() {
+            @Override
+            public boolean accept(char[] buffer, int length) {
+                candidates.add(new String(buffer, 0, length));
+                return false;
+            }
+        });
+        return candidates;
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.bjxytw.wordlens.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// The string-based suffix cascade SuffixCandidates replaced, kept as the expected output for
+// SuffixCandidatesTest and InflectionsTest.
+final class SuffixReference {
+    private static final String[] SUFFIXES = {
+            "ied", "ies", "ier", "iest", "ing", "ed", "er", "est", "es", "s"
+    };
+
+    private SuffixReference() {}
+
+    static List<String> candidates(String word) {
+        List<String> candidates = new ArrayList<>();
+        String wordEnd = null;
+        for (String end : SUFFIXES) {
+            if (end.length() < word.length() && word.endsWith(end)) {
+                wordEnd = end;
+                break;
+            }
+        }
+        if (wordEnd == null) return candidates;
+
+        int size = word.length();
+        int endSize = wordEnd.length();
+        String stem = word.substring(0, size - endSize);
+        switch (wordEnd) {
+            case "ied":
+            case "ies":
+            case "ier":
+            case "iest":
+                candidates.add(stem + 'y');
+                break;
+            case "ing":
+            case "ed":
+            case "er":
+            case "est":
+                if (endSize + 2 < size) {
+                    char char1 = word.charAt(size - endSize - 1);
+                    char char2 = word.charAt(size - endSize - 2);
+                    if (char1 == char2)
+                        candidates.add(word.substring(0, size - endSize - 2) + char1);
+                }
+            case "es":
+                candidates.add(stem + 'e');
+                candidates.add(stem);
+                break;
+            default:
+                candidates.add(stem);
+        }
+        return candidates;
+    }
+}
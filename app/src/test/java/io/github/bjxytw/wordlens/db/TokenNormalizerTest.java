@@ -0,0 +1,48 @@
+package io.github.bjxytw.wordlens.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TokenNormalizerTest {
+
+    @Test
+    public void trimsSymbolsFromBothEnds() {
+        assertEquals("apple", TokenNormalizer.trim("(apple)"));
+        assertEquals("look", TokenNormalizer.trim("\"look,\""));
+        assertEquals("world", TokenNormalizer.trim("world...»"));
+        assertEquals("e.g", TokenNormalizer.trim("e.g."));
+        assertEquals("it's", TokenNormalizer.trim("it's"));
+        assertEquals("co-operate", TokenNormalizer.trim("—co-operate—"));
+        assertEquals("café", TokenNormalizer.trim("“café”"));
+        assertNull(TokenNormalizer.trim(""));
+        assertNull(TokenNormalizer.trim("..."));
+        assertNull(TokenNormalizer.trim("「」"));
+    }
+
+    @Test
+    public void returnsSameStringWhenUnchanged() {
+        String word = "apple";
+        assertSame(word, TokenNormalizer.trim(word));
+        assertSame(word, TokenNormalizer.fold(word));
+        String japanese = "りんご";
+        assertSame(japanese, TokenNormalizer.trim(japanese));
+        assertSame(japanese, TokenNormalizer.fold(japanese));
+    }
+
+    @Test
+    public void foldsToDictionaryForms() {
+        assertEquals("don't", TokenNormalizer.fold("don’t"));
+        assertEquals("well-known", TokenNormalizer.fold("well‐known"));
+        assertEquals("cafe", TokenNormalizer.fold("café"));
+        assertEquals("naive", TokenNormalizer.fold("naïve"));
+        assertEquals("final", TokenNormalizer.fold("ﬁnal"));
+        assertEquals("office", TokenNormalizer.fold("oﬃce"));
+        assertEquals("encyclopaedia", TokenNormalizer.fold("encyclopædia"));
+        assertEquals("strasse", TokenNormalizer.fold("straße"));
+        assertEquals("WORD", TokenNormalizer.fold(TokenNormalizer.trim("ＷＯＲＤ！")));
+        assertEquals("hyphenation", TokenNormalizer.fold("hyphen­ation"));
+        assertEquals("word", TokenNormalizer.fold("﻿word​"));
+        assertNull(TokenNormalizer.fold("​"));
+    }
+}